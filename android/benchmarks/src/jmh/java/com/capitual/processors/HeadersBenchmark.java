@@ -0,0 +1,74 @@
+package com.capitual.processors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+
+/**
+ * Adding the CapFace headers to a request. {@code Config} needs the FaceTec
+ * SDK, so this builds the same header set from a map: once per request, as
+ * {@code Config.getHeaders} used to, or once up front and merged like
+ * {@code HeadersInterceptor} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeadersBenchmark {
+  private static final String USER_AGENT = "facetec|sdk|android|com.capitual.example|9.6.47|SM-A515F|12|pt_BR|";
+
+  private Map<String, String> customHeaders;
+  private Headers compiledHeaders;
+  private Request request;
+
+  @Setup
+  public void setUp() {
+    customHeaders = new LinkedHashMap<>();
+    customHeaders.put("Authorization", "Bearer " + SyntheticPayloads.base64(96));
+    customHeaders.put("X-Request-Source", "react-native");
+    customHeaders.put("X-App-Version", "2.4.1");
+    compiledHeaders = compile();
+    request = new Request.Builder()
+        .url("https://api.example.com/liveness-3d")
+        .build();
+  }
+
+  private Headers compile() {
+    final Headers.Builder builder = new Headers.Builder()
+        .set("X-User-Agent", USER_AGENT)
+        .set("X-Device-Key", "dXXXXXXXXXXXXXXXXXXXXXXXXXXXXXXX")
+        .set("Content-Type", "application/json");
+    for (Map.Entry<String, String> header : customHeaders.entrySet()) {
+      builder.set(header.getKey(), header.getValue());
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public Request perRequestHeaders() {
+    return request.newBuilder()
+        .headers(compile())
+        .build();
+  }
+
+  @Benchmark
+  public Request compiledHeaders() {
+    final Request.Builder builder = request.newBuilder();
+    for (int i = 0, size = compiledHeaders.size(); i < size; i++) {
+      if (request.header(compiledHeaders.name(i)) == null) {
+        builder.addHeader(compiledHeaders.name(i), compiledHeaders.value(i));
+      }
+    }
+    return builder.build();
+  }
+}
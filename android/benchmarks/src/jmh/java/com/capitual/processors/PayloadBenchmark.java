@@ -0,0 +1,94 @@
+package com.capitual.processors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Building and writing the body of a session request: the streamed body the
+ * processors send, against the {@code JSONObject} string it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadBenchmark {
+  /**
+   * FACE is a liveness, enrollment or authentication session; ID_SCAN adds
+   * the ID scan and both ID images.
+   */
+  @Param({"FACE", "ID_SCAN"})
+  public String session;
+
+  private Map<String, Object> data;
+  private String faceScan;
+  private String auditTrailImage;
+  private String lowQualityAuditTrailImage;
+  private String idScan;
+  private String idScanFrontImage;
+  private String idScanBackImage;
+
+  @Setup
+  public void setUp() {
+    data = SyntheticPayloads.data();
+    faceScan = SyntheticPayloads.base64(SyntheticPayloads.FACE_SCAN_BYTES);
+    auditTrailImage = SyntheticPayloads.base64(SyntheticPayloads.AUDIT_TRAIL_IMAGE_BYTES);
+    lowQualityAuditTrailImage = SyntheticPayloads.base64(SyntheticPayloads.LOW_QUALITY_AUDIT_TRAIL_IMAGE_BYTES);
+    if ("ID_SCAN".equals(session)) {
+      idScan = SyntheticPayloads.base64(SyntheticPayloads.ID_SCAN_BYTES);
+      idScanFrontImage = SyntheticPayloads.base64(SyntheticPayloads.ID_SCAN_IMAGE_BYTES);
+      idScanBackImage = SyntheticPayloads.base64(SyntheticPayloads.ID_SCAN_IMAGE_BYTES);
+    }
+  }
+
+  @Benchmark
+  public long streamedBody() throws IOException {
+    final JsonStreamRequestBody body = new JsonStreamRequestBody()
+        .put("data", data)
+        .put("faceScan", faceScan)
+        .put("auditTrailImage", auditTrailImage)
+        .put("lowQualityAuditTrailImage", lowQualityAuditTrailImage)
+        .put("idScan", idScan)
+        .put("idScanFrontImage", idScanFrontImage)
+        .put("idScanBackImage", idScanBackImage);
+
+    // OkHttp asks for the length before writing the body.
+    final long contentLength = body.contentLength();
+    final SyntheticPayloads.DiscardingSink sink = new SyntheticPayloads.DiscardingSink();
+    final BufferedSink bufferedSink = Okio.buffer(sink);
+    body.writeTo(bufferedSink);
+    bufferedSink.flush();
+    return contentLength + sink.bytes;
+  }
+
+  @Benchmark
+  public long jsonObjectBody() throws IOException, JSONException {
+    final JSONObject parameters = new JSONObject();
+    parameters.put("data", new JSONObject(data));
+    parameters.put("faceScan", faceScan);
+    parameters.put("auditTrailImage", auditTrailImage);
+    parameters.put("lowQualityAuditTrailImage", lowQualityAuditTrailImage);
+    parameters.putOpt("idScan", idScan);
+    parameters.putOpt("idScanFrontImage", idScanFrontImage);
+    parameters.putOpt("idScanBackImage", idScanBackImage);
+
+    final SyntheticPayloads.DiscardingSink sink = new SyntheticPayloads.DiscardingSink();
+    final BufferedSink bufferedSink = Okio.buffer(sink);
+    bufferedSink.writeUtf8(parameters.toString());
+    bufferedSink.flush();
+    return sink.bytes;
+  }
+}
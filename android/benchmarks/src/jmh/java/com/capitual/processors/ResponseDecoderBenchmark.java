@@ -0,0 +1,63 @@
+package com.capitual.processors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+/**
+ * Parsing the answers of the session and session token endpoints, against
+ * reading the whole body into a {@code JSONObject}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseDecoderBenchmark {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  /**
+   * Size of the scan result blob, in bytes before base64.
+   */
+  @Param({"2048", "65536"})
+  public int scanResultBlobBytes;
+
+  private byte[] scanResponse;
+  private byte[] sessionTokenResponse;
+
+  @Setup
+  public void setUp() {
+    scanResponse = ("{\"success\":true,\"wasProcessed\":true,\"error\":false,"
+        + "\"additionalSessionData\":{\"platform\":\"android\",\"appID\":\"com.capitual.example\"},"
+        + "\"scanResultBlob\":\"" + SyntheticPayloads.base64(scanResultBlobBytes) + "\"}").getBytes();
+    sessionTokenResponse = ("{\"success\":true,\"sessionToken\":\""
+        + SyntheticPayloads.base64(384) + "\"}").getBytes();
+  }
+
+  @Benchmark
+  public ScanResponse decodeScan() throws IOException {
+    return ResponseDecoder.decodeScan(ResponseBody.create(JSON, scanResponse));
+  }
+
+  @Benchmark
+  public boolean jsonObjectScan() throws IOException, JSONException {
+    final JSONObject response = new JSONObject(ResponseBody.create(JSON, scanResponse).string());
+    return response.getBoolean("wasProcessed") && response.getString("scanResultBlob") != null;
+  }
+
+  @Benchmark
+  public SessionTokenResponse decodeSessionToken() throws IOException {
+    return ResponseDecoder.decodeSessionToken(ResponseBody.create(JSON, sessionTokenResponse));
+  }
+}
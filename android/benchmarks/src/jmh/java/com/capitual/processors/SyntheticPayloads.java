@@ -0,0 +1,85 @@
+package com.capitual.processors;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import okio.Buffer;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Synthetic session data with the sizes FaceTec produces on a mid-range
+ * device. Random bytes do not compress, like the encrypted face scan.
+ */
+final class SyntheticPayloads {
+  static final int FACE_SCAN_BYTES = 150 * 1024;
+  static final int AUDIT_TRAIL_IMAGE_BYTES = 30 * 1024;
+  static final int LOW_QUALITY_AUDIT_TRAIL_IMAGE_BYTES = 8 * 1024;
+  static final int ID_SCAN_BYTES = 120 * 1024;
+  static final int ID_SCAN_IMAGE_BYTES = 250 * 1024;
+
+  private static final Random random = new Random(42);
+
+  private SyntheticPayloads() {
+  }
+
+  static String base64(int bytes) {
+    final byte[] data = new byte[bytes];
+    random.nextBytes(data);
+    return Base64.getEncoder().encodeToString(data);
+  }
+
+  /**
+   * The {@code data} of a session, shaped like {@code ReadableMap.toHashMap()}.
+   */
+  static Map<String, Object> data() {
+    final Map<String, Object> address = new LinkedHashMap<>();
+    address.put("street", "Rua Doutor José \"Zé\" Bonifácio, 1234");
+    address.put("city", "São Paulo");
+    address.put("zipCode", "01000-000");
+
+    final List<Object> tags = new ArrayList<>();
+    tags.add("onboarding");
+    tags.add("mobile");
+
+    final Map<String, Object> data = new LinkedHashMap<>();
+    data.put("userId", "6f9619ff-8b86-d011-b42d-00cf4fc964ff");
+    data.put("name", "João da Silva");
+    data.put("document", "123.456.789-00");
+    data.put("attempt", 1.0);
+    data.put("isFirstAccess", true);
+    data.put("address", address);
+    data.put("tags", tags);
+    return data;
+  }
+
+  /**
+   * A sink that drops everything, so only the serialization is measured.
+   */
+  static final class DiscardingSink implements Sink {
+    long bytes = 0;
+
+    @Override
+    public void write(Buffer source, long byteCount) throws java.io.IOException {
+      source.skip(byteCount);
+      bytes += byteCount;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public Timeout timeout() {
+      return Timeout.NONE;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Sets the connect, write and read timeouts of each attempt from the payload
+ * size and the link estimate of {@link BandwidthEstimator}, so a dead link
+ * surfaces in seconds instead of after the client-wide maximum. A compressed
+ * body is sized by its expected compressed length, since the estimate is
+ * measured in bytes on the wire.
+ */
+class AdaptiveTimeoutInterceptor implements Interceptor {
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final RequestBody body = request.body();
+    final long payloadBytes;
+    if (body instanceof ProgressRequestBody) {
+      payloadBytes = ((ProgressRequestBody) body).estimatedLength();
+    } else if (body instanceof CompressedRequestBody) {
+      payloadBytes = ((CompressedRequestBody) body).estimatedLength();
+    } else {
+      payloadBytes = body != null ? body.contentLength() : 0;
+    }
+    final int timeoutMillis = (int) BandwidthEstimator.timeoutMillisFor(payloadBytes);
+    final int connectTimeoutMillis = (int) BandwidthEstimator.timeoutMillisFor(0);
+
+    return chain
+        .withConnectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+        .withWriteTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+        .withReadTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+        .proceed(request);
+  }
+}
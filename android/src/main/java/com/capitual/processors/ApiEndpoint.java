@@ -0,0 +1,51 @@
+package com.capitual.processors;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+
+/**
+ * The CapFace backend endpoints, with the retry budget and the slow call
+ * threshold of each one. Requests built with {@link #newRequest()} carry the
+ * endpoint as a tag, which the interceptors of the API client use to apply
+ * per-endpoint policies.
+ */
+public enum ApiEndpoint {
+  SESSION_TOKEN("/session-token", 3, TimeUnit.SECONDS.toMillis(5), TimeUnit.SECONDS.toMillis(3)),
+  LIVENESS_3D("/liveness-3d", 3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(20)),
+  ENROLLMENT_3D("/enrollment-3d", 3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(20)),
+  MATCH_3D_3D("/match-3d-3d", 3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(20)),
+  MATCH_3D_2D_IDSCAN("/match-3d-2d-idscan", 3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(20)),
+  IDSCAN_ONLY("/idscan-only", 3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(20)),
+  SESSION_ARTIFACTS("/session-artifacts", 5, TimeUnit.SECONDS.toMillis(30), TimeUnit.SECONDS.toMillis(20));
+
+  final String path;
+  final int maxAttempts;
+  final long maxRetryDelayMillis;
+  /**
+   * Time the backend may take to answer, upload time excluded, before the
+   * {@link CircuitBreaker} counts the call as slow.
+   */
+  final long slowCallMillis;
+
+  ApiEndpoint(String path, int maxAttempts, long maxRetryDelayMillis, long slowCallMillis) {
+    this.path = path;
+    this.maxAttempts = maxAttempts;
+    this.maxRetryDelayMillis = maxRetryDelayMillis;
+    this.slowCallMillis = slowCallMillis;
+  }
+
+  public String url() {
+    return String.valueOf(EndpointRouter.url(this));
+  }
+
+  /**
+   * A request to the endpoint on the base URL {@link EndpointRouter} currently
+   * picks for it. {@link FailoverInterceptor} may move it to another one.
+   */
+  public Request.Builder newRequest() {
+    return new Request.Builder()
+        .url(EndpointRouter.url(this))
+        .tag(ApiEndpoint.class, this);
+  }
+}
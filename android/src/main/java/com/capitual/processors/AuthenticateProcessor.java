@@ -7,69 +7,65 @@ import androidx.annotation.NonNull;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.RequestBody;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 
 import com.capitual.processors.helpers.ThemeUtils;
-import com.capitual.reactnativecapfacesdk.ReactNativeCapfaceSdkModule;
 import com.facebook.react.bridge.ReadableMap;
 import com.facetec.sdk.*;
 
-public class AuthenticateProcessor extends Processor implements FaceTecFaceScanProcessor {
+public class AuthenticateProcessor extends Processor implements FaceTecFaceScanProcessor,
+    FaceTecBridge.FaceScanProcessor {
   private boolean success = false;
   private final String principalKey = "authenticateMessage";
-  private final ReactNativeCapfaceSdkModule capFaceModule;
+  private final SessionHost capFaceModule;
+  private final String sessionId;
   private final ReadableMap data;
   private final ThemeUtils capThemeUtils = new ThemeUtils();
 
-  public AuthenticateProcessor(String sessionToken, Context context, ReactNativeCapfaceSdkModule capFaceModule,
+  public AuthenticateProcessor(String sessionToken, Context context, SessionHost capFaceModule,
       ReadableMap data) {
     this.capFaceModule = capFaceModule;
+    this.sessionId = capFaceModule.getLatestSessionId();
     this.data = data;
 
     capFaceModule.sendEvent("onCloseModal", true);
-    FaceTecSessionActivity.createAndLaunchSession(context, AuthenticateProcessor.this, sessionToken);
+    FaceTecBridge.launch(context, AuthenticateProcessor.this, sessionToken);
+    ConnectionWarmer.startKeepWarm();
   }
 
   public void processSessionWhileFaceTecSDKWaits(final FaceTecSessionResult sessionResult,
       final FaceTecFaceScanResultCallback faceScanResultCallback) {
     capFaceModule.setLatestSessionResult(sessionResult);
+    processFaceScan(FaceTecBridge.faceScan(sessionResult), FaceTecBridge.callback(faceScanResultCallback));
+  }
 
-    if (sessionResult.getStatus() != FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY) {
-      NetworkingHelpers.cancelPendingRequests();
+  @Override
+  public void processFaceScan(final FaceTecBridge.FaceScan sessionResult,
+      final FaceTecBridge.ScanResultCallback faceScanResultCallback) {
+    SessionMetrics.lap(sessionId, "camera");
+    ConnectionWarmer.stopKeepWarm();
+
+    if (!sessionResult.isCompleted()) {
+      SessionCallRegistry.cancelSession(sessionId);
       faceScanResultCallback.cancel();
       capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("The session status has not been completed!", "CapFaceInvalidSession");
+      capFaceModule.rejectProcessorPromise("The session status has not been completed!", "CapFaceInvalidSession");
       return;
     }
 
-    JSONObject parameters = new JSONObject();
-    try {
-      if (this.data != null) {
-        parameters.put("data", new JSONObject(this.data.toHashMap()));
-      }
-      parameters.put("faceScan", sessionResult.getFaceScanBase64());
-      parameters.put("auditTrailImage", sessionResult.getAuditTrailCompressedBase64()[0]);
-      parameters.put("lowQualityAuditTrailImage", sessionResult.getLowQualityAuditTrailCompressedBase64()[0]);
-      parameters.put("externalDatabaseRefID", capFaceModule.getLatestExternalDatabaseRefID());
-    } catch (JSONException e) {
-      e.printStackTrace();
-      Log.d("Capitual - JSON", "Exception raised while attempting to create JSON payload for upload.");
-      capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("Exception raised while attempting to create JSON payload for upload.",
-          "JSONError");
-    }
-
-    okhttp3.Request request = new okhttp3.Request.Builder()
-        .url(Config.BaseURL + "/match-3d-3d")
-        .headers(Config.getHeaders("POST"))
-        .post(new ProgressRequestBody(
-            RequestBody.create(MediaType.parse("application/json; charset=utf-8"), parameters.toString()),
+    final DeferredArtifacts artifacts = new DeferredArtifacts(sessionId, capFaceModule.getLatestExternalDatabaseRefID());
+    JsonStreamRequestBody parameters = new JsonStreamRequestBody()
+        .put("data", artifacts.keep("data", this.data != null ? this.data.toHashMap() : null))
+        .put("faceScan", sessionResult.getFaceScanBase64())
+        .put("auditTrailImage", artifacts.keep("auditTrailImage", sessionResult.getAuditTrailImage()))
+        .put("lowQualityAuditTrailImage",
+            artifacts.keep("lowQualityAuditTrailImage", sessionResult.getLowQualityAuditTrailImage()))
+        .put("externalDatabaseRefID", capFaceModule.getLatestExternalDatabaseRefID())
+        .put("deferredFields", artifacts.getFields());
+
+    okhttp3.Request request = ApiEndpoint.MATCH_3D_3D.newRequest()
+        .post(new ProgressRequestBody(parameters,
             new ProgressRequestBody.Listener() {
               @Override
               public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
@@ -79,36 +75,38 @@ public class AuthenticateProcessor extends Processor implements FaceTecFaceScanP
             }))
         .build();
 
-    NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+    SessionMetrics.lap(sessionId, "payload");
+    SessionCallRegistry.enqueue(sessionId, request, new Callback() {
       @Override
       public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) throws IOException {
-        String responseString = response.body().string();
-        response.body().close();
         try {
-          JSONObject responseJSON = new JSONObject(responseString);
-          boolean wasProcessed = responseJSON.getBoolean("wasProcessed");
-          String scanResultBlob = responseJSON.getString("scanResultBlob");
+          ScanResponse scanResponse = ResponseDecoder.decodeScan(response.body());
+          boolean wasProcessed = scanResponse.wasProcessed;
+          String scanResultBlob = scanResponse.scanResultBlob;
+          SessionMetrics.lap(sessionId, "request");
 
           if (wasProcessed) {
+            artifacts.upload();
             FaceTecCustomization.overrideResultScreenSuccessMessage = capThemeUtils
                 .handleMessage(principalKey, "successMessage", "Authenticated");
             success = faceScanResultCallback.proceedToNextStep(scanResultBlob);
+            SessionMetrics.lap(sessionId, "proceedToNextStep");
             if (success) {
               capFaceModule.sendEvent("onCloseModal", false);
-              capFaceModule.processorPromise.resolve(true);
+              capFaceModule.resolveProcessorPromise(sessionId, ApiEndpoint.MATCH_3D_3D);
             }
           } else {
             faceScanResultCallback.cancel();
             capFaceModule.sendEvent("onCloseModal", false);
-            capFaceModule.processorPromise.reject("CapFace SDK values were not processed!",
+            capFaceModule.rejectProcessorPromise("CapFace SDK values were not processed!",
                 "CapFaceValuesWereNotProcessed");
           }
-        } catch (JSONException e) {
+        } catch (ResponseDecoder.DecodeException e) {
           e.printStackTrace();
           Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
           faceScanResultCallback.cancel();
           capFaceModule.sendEvent("onCloseModal", false);
-          capFaceModule.processorPromise.reject("Exception raised while attempting to parse JSON result.",
+          capFaceModule.rejectProcessorPromise("Exception raised while attempting to parse JSON result.",
               "JSONError");
         }
       }
@@ -118,7 +116,7 @@ public class AuthenticateProcessor extends Processor implements FaceTecFaceScanP
         Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
         faceScanResultCallback.cancel();
         capFaceModule.sendEvent("onCloseModal", false);
-        capFaceModule.processorPromise.reject("Exception raised while attempting HTTPS call.", "HTTPSError");
+        rejectFailedCall(capFaceModule, e);
       }
     });
   }
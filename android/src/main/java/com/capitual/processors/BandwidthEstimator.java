@@ -0,0 +1,105 @@
+package com.capitual.processors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running estimate of the upload throughput and round trip time of the link,
+ * fed by the uploads and response timings of the API client. The estimate is
+ * used to size the timeouts of each request and is exposed to JS, so the app
+ * can warn users on bad connections before the camera opens.
+ */
+public class BandwidthEstimator {
+  public enum Quality {
+    UNKNOWN, POOR, MODERATE, GOOD
+  }
+
+  private static final double SMOOTHING = 0.3;
+  private static final long MIN_UPLOAD_SAMPLE_BYTES = 16 * 1024;
+  private static final long TIMEOUT_SLACK_MILLIS = 2000;
+
+  private static double throughputBytesPerSecond = 0;
+  private static double rttMillis = 0;
+  private static int throughputSamples = 0;
+  private static int rttSamples = 0;
+  private static long minTimeoutMillis = TimeUnit.SECONDS.toMillis(15);
+  private static long maxTimeoutMillis = TimeUnit.SECONDS.toMillis(180);
+
+  public static synchronized void configure(Long minTimeoutSeconds, Long maxTimeoutSeconds) {
+    if (minTimeoutSeconds != null && minTimeoutSeconds > 0) {
+      minTimeoutMillis = TimeUnit.SECONDS.toMillis(minTimeoutSeconds);
+    }
+    if (maxTimeoutSeconds != null && maxTimeoutSeconds > 0) {
+      maxTimeoutMillis = TimeUnit.SECONDS.toMillis(maxTimeoutSeconds);
+    }
+    maxTimeoutMillis = Math.max(minTimeoutMillis, maxTimeoutMillis);
+  }
+
+  static synchronized void recordUpload(long bytes, long elapsedNanos) {
+    if (bytes < MIN_UPLOAD_SAMPLE_BYTES || elapsedNanos <= 0) {
+      return;
+    }
+    final double sample = bytes / (elapsedNanos / 1e9);
+    throughputBytesPerSecond = throughputSamples == 0
+        ? sample
+        : SMOOTHING * sample + (1 - SMOOTHING) * throughputBytesPerSecond;
+    throughputSamples++;
+  }
+
+  static synchronized void recordRtt(long elapsedNanos) {
+    if (elapsedNanos <= 0) {
+      return;
+    }
+    final double sample = elapsedNanos / 1e6;
+    rttMillis = rttSamples == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * rttMillis;
+    rttSamples++;
+  }
+
+  /**
+   * Time given to a request sending {@code payloadBytes}: a few round trips
+   * plus twice the expected transfer time, bounded by the configured minimum
+   * and maximum. Without measurements the maximum is used.
+   */
+  public static synchronized long timeoutMillisFor(long payloadBytes) {
+    if (throughputSamples == 0 && rttSamples == 0) {
+      return maxTimeoutMillis;
+    }
+    long timeout = TIMEOUT_SLACK_MILLIS + (long) (rttMillis * 4);
+    if (payloadBytes > 0) {
+      if (throughputSamples == 0) {
+        return maxTimeoutMillis;
+      }
+      timeout += (long) (payloadBytes / throughputBytesPerSecond * 2000);
+    }
+    return Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, timeout));
+  }
+
+  public static synchronized long getMaxTimeoutMillis() {
+    return maxTimeoutMillis;
+  }
+
+  public static synchronized double getThroughputKbps() {
+    return throughputBytesPerSecond * 8 / 1000;
+  }
+
+  public static synchronized double getRttMillis() {
+    return rttMillis;
+  }
+
+  public static synchronized int getSamples() {
+    return throughputSamples + rttSamples;
+  }
+
+  public static synchronized Quality getQuality() {
+    if (throughputSamples == 0 && rttSamples == 0) {
+      return Quality.UNKNOWN;
+    }
+    final double throughputKbps = getThroughputKbps();
+    if ((throughputSamples > 0 && throughputKbps < 250) || rttMillis > 1000) {
+      return Quality.POOR;
+    }
+    if ((throughputSamples > 0 && throughputKbps < 1500) || rttMillis > 300) {
+      return Quality.MODERATE;
+    }
+    return throughputSamples > 0 ? Quality.GOOD : Quality.UNKNOWN;
+  }
+}
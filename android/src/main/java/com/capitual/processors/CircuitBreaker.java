@@ -0,0 +1,186 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint circuit breaker over the calls of the API client.
+ *
+ * <p>The outcomes of the last {@link #WINDOW_SIZE} attempts of the last
+ * minute are kept, each retry counting as an attempt of its own. Once there
+ * are at least {@link #MIN_CALLS} of them, the breaker opens when half of
+ * them failed, or when most of them were slow. While open, calls fail right
+ * away and new sessions are refused before the camera opens.
+ * After {@link #OPEN_MILLIS} one call is let through as a probe: its success
+ * closes the breaker, its failure opens it again.
+ */
+public class CircuitBreaker {
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  static final int WINDOW_SIZE = 20;
+  static final int MIN_CALLS = 5;
+  static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final double FAILURE_RATE_THRESHOLD = 0.5;
+  private static final double SLOW_RATE_THRESHOLD = 0.8;
+
+  private static final CircuitBreaker[] breakers = new CircuitBreaker[ApiEndpoint.values().length];
+
+  static {
+    for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+      breakers[endpoint.ordinal()] = new CircuitBreaker(endpoint, OPEN_MILLIS);
+    }
+  }
+
+  /**
+   * Raised instead of sending a call while the endpoint's breaker is open.
+   */
+  static final class OpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    OpenException(ApiEndpoint endpoint) {
+      super("Circuit breaker of " + endpoint.path + " is open.");
+    }
+  }
+
+  private final ApiEndpoint endpoint;
+  private final long openMillis;
+  private final long[] outcomeNanos = new long[WINDOW_SIZE];
+  private final boolean[] outcomeFailed = new boolean[WINDOW_SIZE];
+  private final boolean[] outcomeSlow = new boolean[WINDOW_SIZE];
+  private int nextOutcome = 0;
+  private int outcomes = 0;
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private boolean isProbeInFlight = false;
+
+  /**
+   * A breaker of its own, outside the per-endpoint ones the API client uses,
+   * that stays open for {@code openMillis}.
+   */
+  CircuitBreaker(ApiEndpoint endpoint, long openMillis) {
+    this.endpoint = endpoint;
+    this.openMillis = openMillis;
+  }
+
+  static CircuitBreaker of(@NonNull ApiEndpoint endpoint) {
+    return breakers[endpoint.ordinal()];
+  }
+
+  /**
+   * Whether calls to {@code endpoint} are being refused right now.
+   */
+  public static boolean isOpen(@NonNull ApiEndpoint endpoint) {
+    return of(endpoint).getState() == State.OPEN;
+  }
+
+  public synchronized State getState() {
+    if (state == State.OPEN && elapsedMillis(openedAtNanos) >= openMillis) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  /**
+   * Returns whether a call may go out now. A call that was allowed must be
+   * followed by {@link #onSuccess}, {@link #onFailure} or {@link #onIgnored}.
+   */
+  synchronized boolean tryAcquire() {
+    if (state == State.OPEN) {
+      if (elapsedMillis(openedAtNanos) < openMillis) {
+        return false;
+      }
+      state = State.HALF_OPEN;
+      isProbeInFlight = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (isProbeInFlight) {
+        return false;
+      }
+      isProbeInFlight = true;
+    }
+    return true;
+  }
+
+  /**
+   * Records an answered call. {@code serverMillis} is how long the backend took
+   * to answer, upload time excluded.
+   */
+  synchronized void onSuccess(long serverMillis) {
+    final boolean isSlow = serverMillis > endpoint.slowCallMillis;
+    if (state == State.HALF_OPEN) {
+      isProbeInFlight = false;
+      if (isSlow) {
+        open();
+      } else {
+        close();
+      }
+      return;
+    }
+    record(false, isSlow);
+  }
+
+  synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      isProbeInFlight = false;
+      open();
+      return;
+    }
+    record(true, false);
+  }
+
+  /**
+   * Releases a call whose outcome says nothing about the backend, such as a
+   * call cancelled by the app.
+   */
+  synchronized void onIgnored() {
+    if (state == State.HALF_OPEN) {
+      isProbeInFlight = false;
+    }
+  }
+
+  private void record(boolean failed, boolean slow) {
+    outcomeNanos[nextOutcome] = System.nanoTime();
+    outcomeFailed[nextOutcome] = failed;
+    outcomeSlow[nextOutcome] = slow;
+    nextOutcome = (nextOutcome + 1) % WINDOW_SIZE;
+    outcomes = Math.min(WINDOW_SIZE, outcomes + 1);
+
+    if (state != State.CLOSED) {
+      return;
+    }
+    int recent = 0;
+    int failures = 0;
+    int slowCalls = 0;
+    for (int i = 0; i < outcomes; i++) {
+      if (elapsedMillis(outcomeNanos[i]) <= WINDOW_MILLIS) {
+        recent++;
+        failures += outcomeFailed[i] ? 1 : 0;
+        slowCalls += outcomeSlow[i] ? 1 : 0;
+      }
+    }
+    if (recent >= MIN_CALLS && (failures >= recent * FAILURE_RATE_THRESHOLD
+        || slowCalls >= recent * SLOW_RATE_THRESHOLD)) {
+      open();
+    }
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAtNanos = System.nanoTime();
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    nextOutcome = 0;
+    outcomes = 0;
+  }
+
+  private static long elapsedMillis(long sinceNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sinceNanos);
+  }
+}
@@ -0,0 +1,65 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Fails {@link ApiEndpoint} calls right away while the endpoint's
+ * {@link CircuitBreaker} is open, and reports the outcome of the others. It
+ * sits below the retry interceptor, so each attempt is one outcome, timed on
+ * its own, and a breaker that opens stops the remaining attempts.
+ */
+class CircuitBreakerInterceptor implements Interceptor {
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final ApiEndpoint endpoint = request.tag(ApiEndpoint.class);
+    if (endpoint == null) {
+      return chain.proceed(request);
+    }
+
+    final CircuitBreaker breaker = CircuitBreaker.of(endpoint);
+    if (!breaker.tryAcquire()) {
+      throw new CircuitBreaker.OpenException(endpoint);
+    }
+
+    final long startNanos = System.nanoTime();
+    final long startWriteNanos = writeNanos(request.body());
+    final Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException e) {
+      if (chain.call().isCanceled()) {
+        breaker.onIgnored();
+      } else {
+        breaker.onFailure();
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      breaker.onIgnored();
+      throw e;
+    }
+
+    if (response.code() >= 500 || response.code() == 429) {
+      breaker.onFailure();
+    } else {
+      // Upload time depends on the link, not on the backend.
+      final long attemptWriteNanos = writeNanos(request.body()) - startWriteNanos;
+      final long elapsedNanos = System.nanoTime() - startNanos - attemptWriteNanos;
+      breaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(Math.max(0, elapsedNanos)));
+    }
+    return response;
+  }
+
+  private static long writeNanos(RequestBody body) {
+    return body instanceof ProgressRequestBody ? ((ProgressRequestBody) body).getWriteNanos() : 0;
+  }
+}
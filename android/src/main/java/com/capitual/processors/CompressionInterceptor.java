@@ -0,0 +1,153 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Compresses upload bodies with the encoding selected in
+ * {@link Config#UploadCompression} and sets {@code Content-Encoding}.
+ *
+ * <p>The body is compressed while it is written to the connection, so nothing
+ * is compressed up front and the compressed length is not known in advance.
+ * A {@link ProgressRequestBody} keeps wrapping the compressed body, so its
+ * progress counts the compressed bytes that go on the wire. If the server
+ * answers a compressed request with
+ * {@code 415 Unsupported Media Type}, the request is sent again uncompressed
+ * and compression stays off until it is configured again.
+ */
+class CompressionInterceptor implements Interceptor {
+  static final String GZIP = "gzip";
+  static final String DEFLATE = "deflate";
+
+  private static volatile boolean serverRejectedCompression = false;
+
+  /**
+   * Lets compressed uploads be tried again, for a new configuration that may
+   * point to another backend.
+   */
+  static void resetServerRejection() {
+    serverRejectedCompression = false;
+  }
+
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final RequestBody body = request.body();
+    final String encoding = Config.UploadCompression;
+
+    if (body == null
+        || serverRejectedCompression
+        || !(GZIP.equals(encoding) || DEFLATE.equals(encoding))
+        || request.header("Content-Encoding") != null
+        || body.contentLength() < Config.UploadCompressionThreshold) {
+      return chain.proceed(request);
+    }
+
+    final RequestBody compressedBody = body instanceof ProgressRequestBody
+        ? ((ProgressRequestBody) body).compressed(encoding)
+        : new CompressedRequestBody(body, encoding);
+    final Request compressedRequest = request.newBuilder()
+        .header("Content-Encoding", encoding)
+        .method(request.method(), compressedBody)
+        .build();
+
+    final Response response = chain.proceed(compressedRequest);
+    if (response.code() != 415) {
+      return response;
+    }
+
+    Log.d("Capitual - HTTPS", "Server does not accept compressed uploads, sending them uncompressed.");
+    serverRejectedCompression = true;
+    response.close();
+    return chain.proceed(request);
+  }
+}
+
+/**
+ * A request body compressed as it is written. Each write compresses the
+ * source again, so the body can be written again if the call is retried.
+ */
+class CompressedRequestBody extends RequestBody {
+  /**
+   * Compressed size over uncompressed size of the last body written. It
+   * starts at 1, so the first estimate is the uncompressed length.
+   */
+  private static volatile double compressionRatio = 1.0;
+
+  private final RequestBody source;
+  private final String encoding;
+
+  CompressedRequestBody(RequestBody source, String encoding) {
+    this.source = source;
+    this.encoding = encoding;
+  }
+
+  /**
+   * The expected compressed length, from the ratio the last body compressed
+   * at, or -1 when the uncompressed length is not known either.
+   */
+  long estimatedLength() throws IOException {
+    final long sourceLength = source.contentLength();
+    return sourceLength < 0 ? -1L : (long) Math.ceil(sourceLength * compressionRatio);
+  }
+
+  @Override
+  public MediaType contentType() {
+    return source.contentType();
+  }
+
+  @Override
+  public long contentLength() {
+    return -1L;
+  }
+
+  @Override
+  public void writeTo(@NonNull BufferedSink sink) throws IOException {
+    // Closing the compressor writes its trailer; the connection's sink stays
+    // open for OkHttp to finish the request.
+    final long[] compressedBytes = { 0 };
+    final Sink target = new ForwardingSink(sink) {
+      @Override
+      public void write(@NonNull Buffer source, long byteCount) throws IOException {
+        super.write(source, byteCount);
+        compressedBytes[0] += byteCount;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    final Sink compressor = CompressionInterceptor.GZIP.equals(encoding)
+        ? new GzipSink(target)
+        : new DeflaterSink(target, new Deflater());
+    final BufferedSink compressedSink = Okio.buffer(compressor);
+    try {
+      source.writeTo(compressedSink);
+    } finally {
+      compressedSink.close();
+    }
+
+    final long sourceLength = source.contentLength();
+    if (sourceLength > 0) {
+      compressionRatio = (double) compressedBytes[0] / sourceLength;
+    }
+  }
+}
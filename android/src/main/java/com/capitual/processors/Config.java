@@ -4,6 +4,7 @@ import android.content.Context;
 
 import com.facebook.react.bridge.ReadableMap;
 import com.facetec.sdk.*;
+import com.capitual.processors.helpers.CompiledTheme;
 import com.capitual.processors.helpers.ThemeUtils;
 import com.capitual.reactnativecapfacesdk.R;
 
@@ -11,7 +12,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import okhttp3.Headers;
-import okhttp3.Request;
 
 public class Config {
 	public static String DeviceKeyIdentifier;
@@ -20,7 +20,12 @@ public class Config {
 	public static String ProductionKeyText;
 	public static ReadableMap Theme;
 	public static ReadableMap RequestHeaders;
-	private static final ThemeUtils CapThemeUtils = new ThemeUtils();
+	public static String UploadCompression = "none";
+	public static long UploadCompressionThreshold = 1024;
+	private static volatile CompiledTheme compiledTheme = CompiledTheme.EMPTY;
+
+	private static Headers compiledGetHeaders;
+	private static Headers compiledPostHeaders;
 
 	private static Map<String, String> parseReadableMapToMap() {
 		Map<String, String> headers = new HashMap<String, String>();
@@ -37,38 +42,66 @@ public class Config {
 		return headers;
 	}
 
-	private static Headers parseHeadersMapToHeaders(Map<String, String> headersMap, String httpMethod) {
-		okhttp3.Request.Builder buildHeader = new Request.Builder()
-				.header("X-Device-Key", DeviceKeyIdentifier)
-				.header("X-User-Agent", FaceTecSDK.createFaceTecAPIUserAgentString(""));
+	private static Headers parseHeadersMapToHeaders(Map<String, String> headersMap, String userAgent,
+			String httpMethod) {
+		Headers.Builder buildHeader = new Headers.Builder()
+				.set("X-User-Agent", userAgent);
+
+		if (DeviceKeyIdentifier != null) {
+			buildHeader.set("X-Device-Key", DeviceKeyIdentifier);
+		}
 
 		if (!httpMethod.equals("GET")) {
-			buildHeader = buildHeader.header("Content-Type", "application/json");
+			buildHeader.set("Content-Type", "application/json");
 		}
 
 		for (Map.Entry<String, String> entry : headersMap.entrySet()) {
-			buildHeader = buildHeader.header(entry.getKey(), entry.getValue());
+			buildHeader.set(entry.getKey(), entry.getValue());
 		}
 
-		okhttp3.Request requestHeader = buildHeader
-				.url(Config.BaseURL)
-				.build();
-
-		return requestHeader.headers();
+		return buildHeader.build();
 	}
 
-	public static Headers getHeaders(String httpMethod) {
+	/**
+	 * Builds the GET and POST header sets once per configuration change; the
+	 * API client's HeadersInterceptor applies them to every request.
+	 */
+	private static synchronized void compileHeaders() {
+		if (compiledGetHeaders != null) {
+			return;
+		}
 		Map<String, String> headersMap = parseReadableMapToMap();
-		okhttp3.Headers headers = parseHeadersMapToHeaders(headersMap, httpMethod.toUpperCase());
-		return headers;
+		String userAgent = FaceTecSDK.createFaceTecAPIUserAgentString("");
+		compiledPostHeaders = parseHeadersMapToHeaders(headersMap, userAgent, "POST");
+		compiledGetHeaders = parseHeadersMapToHeaders(headersMap, userAgent, "GET");
+	}
+
+	private static synchronized void invalidateHeaders() {
+		compiledGetHeaders = null;
+		compiledPostHeaders = null;
+	}
+
+	public static synchronized Headers getHeaders(String httpMethod) {
+		compileHeaders();
+		return httpMethod.toUpperCase().equals("GET") ? compiledGetHeaders : compiledPostHeaders;
 	}
 
-	public static void setTheme(ReadableMap theme) {
+	/**
+	 * Sets the theme and the snapshot compiled from it, which is all that
+	 * ThemeUtils and the customization read.
+	 */
+	public static void setTheme(ReadableMap theme, CompiledTheme compiled) {
 		Theme = theme;
+		compiledTheme = compiled;
+	}
+
+	public static CompiledTheme getCompiledTheme() {
+		return compiledTheme;
 	}
 
 	public static void setDevice(String device) {
 		DeviceKeyIdentifier = device;
+		invalidateHeaders();
 	}
 
 	public static void setUrl(String url) {
@@ -85,6 +118,15 @@ public class Config {
 
 	public static void setHeaders(ReadableMap headers) {
 		RequestHeaders = headers;
+		invalidateHeaders();
+	}
+
+	public static void setUploadCompression(String compression, Long threshold) {
+		UploadCompression = compression == null ? "none" : compression.toLowerCase();
+		CompressionInterceptor.resetServerRejection();
+		if (threshold != null) {
+			UploadCompressionThreshold = threshold;
+		}
 	}
 
 	public static boolean hasConfig() {
@@ -112,116 +154,139 @@ public class Config {
 	}
 
 	public static FaceTecCustomization retrieveConfigurationWizardCustomization() {
-		FaceTecCancelButtonCustomization.ButtonLocation cancelButtonLocation = CapThemeUtils
+		final ThemeUtils capThemeUtils = new ThemeUtils();
+		FaceTecCancelButtonCustomization.ButtonLocation cancelButtonLocation = capThemeUtils
 				.handleButtonLocation("cancelButtonLocation");
 
 		FaceTecSecurityWatermarkImage securityWatermarkImage = FaceTecSecurityWatermarkImage.FACETEC;
 
 		FaceTecCustomization defaultCustomization = new FaceTecCustomization();
 
-		defaultCustomization.getFrameCustomization().cornerRadius = CapThemeUtils.handleBorderRadius("frameCornerRadius");
-		defaultCustomization.getFrameCustomization().backgroundColor = CapThemeUtils.handleColor("frameBackgroundColor");
-		defaultCustomization.getFrameCustomization().borderColor = CapThemeUtils.handleColor("frameBorderColor");
+		defaultCustomization.getFrameCustomization().cornerRadius = capThemeUtils.handleBorderRadius("frameCornerRadius");
+		defaultCustomization.getFrameCustomization().backgroundColor = capThemeUtils.handleColor("frameBackgroundColor");
+		defaultCustomization.getFrameCustomization().borderColor = capThemeUtils.handleColor("frameBorderColor");
 
-		defaultCustomization.getOverlayCustomization().brandingImage = CapThemeUtils.handleImage("logoImage",
+		defaultCustomization.getOverlayCustomization().brandingImage = capThemeUtils.handleImage("logoImage",
 				R.drawable.facetec_your_app_logo);
-		defaultCustomization.getOverlayCustomization().backgroundColor = CapThemeUtils
+		defaultCustomization.getOverlayCustomization().backgroundColor = capThemeUtils
 				.handleColor("overlayBackgroundColor");
 
-		defaultCustomization.getGuidanceCustomization().backgroundColors = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().backgroundColors = capThemeUtils.handleColor(
 				"guidanceBackgroundColorsAndroid");
-		defaultCustomization.getGuidanceCustomization().foregroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().foregroundColor = capThemeUtils.handleColor(
 				"guidanceForegroundColor",
 				"#272937");
-		defaultCustomization.getGuidanceCustomization().buttonBackgroundNormalColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonBackgroundNormalColor = capThemeUtils.handleColor(
 				"guidanceButtonBackgroundNormalColor", "#026ff4");
-		defaultCustomization.getGuidanceCustomization().buttonBackgroundDisabledColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonBackgroundDisabledColor = capThemeUtils.handleColor(
 				"guidanceButtonBackgroundDisabledColor", "#b3d4fc");
-		defaultCustomization.getGuidanceCustomization().buttonBackgroundHighlightColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonBackgroundHighlightColor = capThemeUtils.handleColor(
 				"guidanceButtonBackgroundHighlightColor", "#0264dc");
-		defaultCustomization.getGuidanceCustomization().buttonTextNormalColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonTextNormalColor = capThemeUtils.handleColor(
 				"guidanceButtonTextNormalColor");
-		defaultCustomization.getGuidanceCustomization().buttonTextDisabledColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonTextDisabledColor = capThemeUtils.handleColor(
 				"guidanceButtonTextDisabledColor");
-		defaultCustomization.getGuidanceCustomization().buttonTextHighlightColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().buttonTextHighlightColor = capThemeUtils.handleColor(
 				"guidanceButtonTextHighlightColor");
-		defaultCustomization.getGuidanceCustomization().retryScreenImageBorderColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().retryScreenImageBorderColor = capThemeUtils.handleColor(
 				"guidanceRetryScreenImageBorderColor");
-		defaultCustomization.getGuidanceCustomization().retryScreenOvalStrokeColor = CapThemeUtils.handleColor(
+		defaultCustomization.getGuidanceCustomization().retryScreenOvalStrokeColor = capThemeUtils.handleColor(
 				"guidanceRetryScreenOvalStrokeColor");
 
-		defaultCustomization.getOvalCustomization().strokeColor = CapThemeUtils.handleColor("ovalStrokeColor", "#026ff4");
-		defaultCustomization.getOvalCustomization().progressColor1 = CapThemeUtils.handleColor("ovalFirstProgressColor",
+		defaultCustomization.getOvalCustomization().strokeColor = capThemeUtils.handleColor("ovalStrokeColor", "#026ff4");
+		defaultCustomization.getOvalCustomization().progressColor1 = capThemeUtils.handleColor("ovalFirstProgressColor",
 				"#0264dc");
-		defaultCustomization.getOvalCustomization().progressColor2 = CapThemeUtils.handleColor("ovalSecondProgressColor",
+		defaultCustomization.getOvalCustomization().progressColor2 = capThemeUtils.handleColor("ovalSecondProgressColor",
 				"#0264dc");
 
-		defaultCustomization.getFeedbackCustomization().backgroundColors = CapThemeUtils.handleColor(
+		defaultCustomization.getFeedbackCustomization().backgroundColors = capThemeUtils.handleColor(
 				"feedbackBackgroundColorsAndroid",
 				"#026ff4");
-		defaultCustomization.getFeedbackCustomization().textColor = CapThemeUtils.handleColor("feedbackTextColor");
+		defaultCustomization.getFeedbackCustomization().textColor = capThemeUtils.handleColor("feedbackTextColor");
 
-		defaultCustomization.getCancelButtonCustomization().customImage = CapThemeUtils.handleImage("cancelImage",
+		defaultCustomization.getCancelButtonCustomization().customImage = capThemeUtils.handleImage("cancelImage",
 				R.drawable.facetec_cancel);
 		defaultCustomization.getCancelButtonCustomization().setLocation(cancelButtonLocation);
 
-		defaultCustomization.getResultScreenCustomization().backgroundColors = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().backgroundColors = capThemeUtils.handleColor(
 				"resultScreenBackgroundColorsAndroid");
-		defaultCustomization.getResultScreenCustomization().foregroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().foregroundColor = capThemeUtils.handleColor(
 				"resultScreenForegroundColor",
 				"#272937");
-		defaultCustomization.getResultScreenCustomization().activityIndicatorColor = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().activityIndicatorColor = capThemeUtils.handleColor(
 				"resultScreenActivityIndicatorColor", "#026ff4");
-		defaultCustomization.getResultScreenCustomization().resultAnimationBackgroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().resultAnimationBackgroundColor = capThemeUtils.handleColor(
 				"resultScreenResultAnimationBackgroundColor", "#026ff4");
-		defaultCustomization.getResultScreenCustomization().resultAnimationForegroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().resultAnimationForegroundColor = capThemeUtils.handleColor(
 				"resultScreenResultAnimationForegroundColor");
-		defaultCustomization.getResultScreenCustomization().uploadProgressFillColor = CapThemeUtils.handleColor(
+		defaultCustomization.getResultScreenCustomization().uploadProgressFillColor = capThemeUtils.handleColor(
 				"resultScreenUploadProgressFillColor", "#026ff4");
 
 		defaultCustomization.securityWatermarkImage = securityWatermarkImage;
 
-		defaultCustomization.getIdScanCustomization().selectionScreenBackgroundColors = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().selectionScreenBackgroundColors = capThemeUtils.handleColor(
 				"idScanSelectionScreenBackgroundColorsAndroid");
-		defaultCustomization.getIdScanCustomization().selectionScreenForegroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().selectionScreenForegroundColor = capThemeUtils.handleColor(
 				"idScanSelectionScreenForegroundColor", "#272937");
-		defaultCustomization.getIdScanCustomization().reviewScreenForegroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().reviewScreenForegroundColor = capThemeUtils.handleColor(
 				"idScanReviewScreenForegroundColor");
-		defaultCustomization.getIdScanCustomization().reviewScreenTextBackgroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().reviewScreenTextBackgroundColor = capThemeUtils.handleColor(
 				"idScanReviewScreenTextBackgroundColor", "#026ff4");
-		defaultCustomization.getIdScanCustomization().captureScreenForegroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().captureScreenForegroundColor = capThemeUtils.handleColor(
 				"idScanCaptureScreenForegroundColor");
-		defaultCustomization.getIdScanCustomization().captureScreenTextBackgroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().captureScreenTextBackgroundColor = capThemeUtils.handleColor(
 				"idScanCaptureScreenTextBackgroundColor", "#026ff4");
-		defaultCustomization.getIdScanCustomization().buttonBackgroundNormalColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonBackgroundNormalColor = capThemeUtils.handleColor(
 				"idScanButtonBackgroundNormalColor", "#026ff4");
-		defaultCustomization.getIdScanCustomization().buttonBackgroundDisabledColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonBackgroundDisabledColor = capThemeUtils.handleColor(
 				"idScanButtonBackgroundDisabledColor", "#b3d4fc");
-		defaultCustomization.getIdScanCustomization().buttonBackgroundHighlightColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonBackgroundHighlightColor = capThemeUtils.handleColor(
 				"idScanButtonBackgroundHighlightColor", "#0264dc");
-		defaultCustomization.getIdScanCustomization().buttonTextNormalColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonTextNormalColor = capThemeUtils.handleColor(
 				"idScanButtonTextNormalColor");
-		defaultCustomization.getIdScanCustomization().buttonTextDisabledColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonTextDisabledColor = capThemeUtils.handleColor(
 				"idScanButtonTextDisabledColor");
-		defaultCustomization.getIdScanCustomization().buttonTextHighlightColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().buttonTextHighlightColor = capThemeUtils.handleColor(
 				"idScanButtonTextHighlightColor");
-		defaultCustomization.getIdScanCustomization().captureScreenBackgroundColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().captureScreenBackgroundColor = capThemeUtils.handleColor(
 				"idScanCaptureScreenBackgroundColor");
-		defaultCustomization.getIdScanCustomization().captureFrameStrokeColor = CapThemeUtils.handleColor(
+		defaultCustomization.getIdScanCustomization().captureFrameStrokeColor = capThemeUtils.handleColor(
 				"idScanCaptureFrameStrokeColor");
 
 		return defaultCustomization;
 	}
 
-	public static FaceTecCustomization retrieveLowLightConfigurationWizardCustomization() {
-		return retrieveConfigurationWizardCustomization();
+	/**
+	 * The low light variant, derived from a copy of {@code base}. It has no
+	 * overrides of its own yet.
+	 */
+	public static FaceTecCustomization retrieveLowLightConfigurationWizardCustomization(
+			FaceTecCustomization base) {
+		return CustomizationBuilder.copy(base);
 	}
 
-	public static FaceTecCustomization retrieveDynamicDimmingConfigurationWizardCustomization() {
-		return retrieveConfigurationWizardCustomization();
+	/**
+	 * The dynamic dimming variant, derived from a copy of {@code base}. It has
+	 * no overrides of its own yet.
+	 */
+	public static FaceTecCustomization retrieveDynamicDimmingConfigurationWizardCustomization(
+			FaceTecCustomization base) {
+		return CustomizationBuilder.copy(base);
 	}
 
-	public static FaceTecCustomization currentCustomization = retrieveConfigurationWizardCustomization();
-	public static FaceTecCustomization currentLowLightCustomization = retrieveLowLightConfigurationWizardCustomization();
-	public static FaceTecCustomization currentDynamicDimmingCustomization = retrieveDynamicDimmingConfigurationWizardCustomization();
+	/**
+	 * The customizations are built on first use, for the theme current at that
+	 * time, so that loading Config does no FaceTec or theme work.
+	 */
+	public static FaceTecCustomization getCurrentCustomization() {
+		return CustomizationBuilder.build().customization;
+	}
+
+	public static FaceTecCustomization getCurrentLowLightCustomization() {
+		return CustomizationBuilder.build().lowLightCustomization;
+	}
+
+	public static FaceTecCustomization getCurrentDynamicDimmingCustomization() {
+		return CustomizationBuilder.build().dynamicDimmingCustomization;
+	}
 }
@@ -0,0 +1,103 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+
+/**
+ * Opens the connection to the base URL picked by {@link EndpointRouter} ahead
+ * of the first request and keeps it in use while the FaceTec camera is open,
+ * so the upload that follows the session does not pay for DNS, TCP and TLS
+ * again. Once a request was answered, the connection kept warm is the one to
+ * the base URL that answered it, where the upload goes as well.
+ */
+public class ConnectionWarmer {
+  private static final long KEEP_WARM_INTERVAL_SECONDS = 20;
+
+  private static final ScheduledExecutorService scheduler = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+          Thread thread = new Thread(runnable, "CapFace keep warm");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  private static final AtomicLong uploads = new AtomicLong();
+  private static final AtomicLong warmUploads = new AtomicLong();
+  private static ScheduledFuture<?> keepWarmTask;
+
+  /**
+   * Sends a {@code HEAD} request to the base URL last used. Whatever the
+   * status code, the answer proves the connection works and leaves it in the
+   * pool.
+   */
+  public static void preconnect() {
+    final HttpUrl baseUrl = EndpointRouter.lastUsedBaseUrl();
+    if (baseUrl == null) {
+      return;
+    }
+
+    okhttp3.Request request = new okhttp3.Request.Builder()
+        .url(baseUrl)
+        .head()
+        .build();
+
+    NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+      @Override
+      public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        Log.d("Capitual - HTTPS", "Exception raised while attempting to preconnect.");
+      }
+
+      @Override
+      public void onResponse(@NonNull Call call, @NonNull Response response) {
+        response.close();
+      }
+    });
+  }
+
+  public static synchronized void startKeepWarm() {
+    stopKeepWarm();
+    keepWarmTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        preconnect();
+      }
+    }, KEEP_WARM_INTERVAL_SECONDS, KEEP_WARM_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void stopKeepWarm() {
+    if (keepWarmTask != null) {
+      keepWarmTask.cancel(false);
+      keepWarmTask = null;
+    }
+  }
+
+  static void recordUpload(boolean wasWarm) {
+    uploads.incrementAndGet();
+    if (wasWarm) {
+      warmUploads.incrementAndGet();
+    }
+  }
+
+  public static long getUploads() {
+    return uploads.get();
+  }
+
+  public static long getWarmUploads() {
+    return warmUploads.get();
+  }
+}
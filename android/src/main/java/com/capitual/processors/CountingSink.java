@@ -0,0 +1,262 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Counts the bytes a request body writes to the connection's sink, without a
+ * buffer of its own. Every write goes straight into the buffer of the
+ * connection's sink and its complete segments are emitted right away, as that
+ * sink would do itself. Bytes written through {@link #buffer()} are counted
+ * on the next call.
+ */
+final class CountingSink implements BufferedSink {
+  private static final long SEGMENT_SIZE = 8192;
+
+  private final BufferedSink delegate;
+  private final Buffer buffer;
+  private final ProgressAggregator progress;
+  private long accountedSize;
+
+  CountingSink(BufferedSink delegate, ProgressAggregator progress) {
+    this.delegate = delegate;
+    this.buffer = delegate.buffer();
+    this.progress = progress;
+    this.accountedSize = buffer.size();
+  }
+
+  /**
+   * Counts what the buffer grew by since the last call, before the
+   * connection's sink moves it on.
+   */
+  private void account() {
+    final long written = buffer.size() - accountedSize;
+    if (written > 0) {
+      progress.onBytesWritten(written);
+    }
+  }
+
+  private BufferedSink written() throws IOException {
+    account();
+    delegate.emitCompleteSegments();
+    accountedSize = buffer.size();
+    return this;
+  }
+
+  @Override
+  public Buffer buffer() {
+    return buffer;
+  }
+
+  @Override
+  public void write(@NonNull Buffer source, long byteCount) throws IOException {
+    buffer.write(source, byteCount);
+    written();
+  }
+
+  @Override
+  public BufferedSink write(@NonNull ByteString byteString) throws IOException {
+    buffer.write(byteString);
+    return written();
+  }
+
+  @Override
+  public BufferedSink write(@NonNull byte[] source) throws IOException {
+    buffer.write(source);
+    return written();
+  }
+
+  @Override
+  public BufferedSink write(@NonNull byte[] source, int offset, int byteCount) throws IOException {
+    buffer.write(source, offset, byteCount);
+    return written();
+  }
+
+  @Override
+  public int write(ByteBuffer source) throws IOException {
+    final int byteCount = buffer.write(source);
+    written();
+    return byteCount;
+  }
+
+  @Override
+  public long writeAll(@NonNull Source source) throws IOException {
+    long totalBytesRead = 0;
+    for (long readCount; (readCount = source.read(buffer, SEGMENT_SIZE)) != -1; ) {
+      totalBytesRead += readCount;
+      written();
+    }
+    return totalBytesRead;
+  }
+
+  @Override
+  public BufferedSink write(@NonNull Source source, long byteCount) throws IOException {
+    while (byteCount > 0) {
+      final long readCount = source.read(buffer, byteCount);
+      if (readCount == -1) {
+        throw new EOFException();
+      }
+      byteCount -= readCount;
+      written();
+    }
+    return this;
+  }
+
+  @Override
+  public BufferedSink writeUtf8(@NonNull String string) throws IOException {
+    buffer.writeUtf8(string);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeUtf8(@NonNull String string, int beginIndex, int endIndex) throws IOException {
+    buffer.writeUtf8(string, beginIndex, endIndex);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeUtf8CodePoint(int codePoint) throws IOException {
+    buffer.writeUtf8CodePoint(codePoint);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeString(@NonNull String string, @NonNull Charset charset) throws IOException {
+    buffer.writeString(string, charset);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeString(@NonNull String string, int beginIndex, int endIndex, @NonNull Charset charset)
+      throws IOException {
+    buffer.writeString(string, beginIndex, endIndex, charset);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeByte(int b) throws IOException {
+    buffer.writeByte(b);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeShort(int s) throws IOException {
+    buffer.writeShort(s);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeShortLe(int s) throws IOException {
+    buffer.writeShortLe(s);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeInt(int i) throws IOException {
+    buffer.writeInt(i);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeIntLe(int i) throws IOException {
+    buffer.writeIntLe(i);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeLong(long v) throws IOException {
+    buffer.writeLong(v);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeLongLe(long v) throws IOException {
+    buffer.writeLongLe(v);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeDecimalLong(long v) throws IOException {
+    buffer.writeDecimalLong(v);
+    return written();
+  }
+
+  @Override
+  public BufferedSink writeHexadecimalUnsignedLong(long v) throws IOException {
+    buffer.writeHexadecimalUnsignedLong(v);
+    return written();
+  }
+
+  @Override
+  public BufferedSink emitCompleteSegments() throws IOException {
+    return written();
+  }
+
+  @Override
+  public BufferedSink emit() throws IOException {
+    account();
+    delegate.emit();
+    accountedSize = buffer.size();
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    account();
+    delegate.flush();
+    accountedSize = buffer.size();
+  }
+
+  @Override
+  public OutputStream outputStream() {
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        writeByte((byte) b);
+      }
+
+      @Override
+      public void write(@NonNull byte[] data, int offset, int byteCount) throws IOException {
+        CountingSink.this.write(data, offset, byteCount);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        CountingSink.this.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        CountingSink.this.close();
+      }
+    };
+  }
+
+  @Override
+  public boolean isOpen() {
+    return delegate.isOpen();
+  }
+
+  @Override
+  public Timeout timeout() {
+    return delegate.timeout();
+  }
+
+  @Override
+  public void close() throws IOException {
+    account();
+    accountedSize = buffer.size();
+    delegate.close();
+  }
+}
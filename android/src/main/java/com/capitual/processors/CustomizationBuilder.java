@@ -0,0 +1,126 @@
+package com.capitual.processors;
+
+import com.capitual.processors.helpers.CompiledTheme;
+import com.capitual.reactnativecapfacesdk.R;
+
+import com.facetec.sdk.FaceTecCustomization;
+
+import android.util.Log;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.IdentityHashMap;
+
+/**
+ * Builds the FaceTec customizations for the current theme, once per theme.
+ *
+ * <p>The theme is applied once, to the default customization. The low light
+ * and dynamic dimming variants are derived from deep copies of it, since the
+ * SDK keeps the instances it is given and the NFC animations only belong to
+ * the default one. Building again for a theme equal to the last one returns
+ * the same {@link Customizations}.
+ */
+final class CustomizationBuilder {
+  private static CompiledTheme builtTheme;
+  private static Customizations built;
+
+  private CustomizationBuilder() {
+  }
+
+  static final class Customizations {
+    final FaceTecCustomization customization;
+    final FaceTecCustomization lowLightCustomization;
+    final FaceTecCustomization dynamicDimmingCustomization;
+
+    private Customizations(FaceTecCustomization customization, FaceTecCustomization lowLightCustomization,
+        FaceTecCustomization dynamicDimmingCustomization) {
+      this.customization = customization;
+      this.lowLightCustomization = lowLightCustomization;
+      this.dynamicDimmingCustomization = dynamicDimmingCustomization;
+    }
+  }
+
+  static synchronized Customizations build() {
+    final CompiledTheme theme = Config.getCompiledTheme();
+    if (built != null && theme.equals(builtTheme)) {
+      return built;
+    }
+
+    final FaceTecCustomization customization = Config.retrieveConfigurationWizardCustomization();
+    final FaceTecCustomization lowLightCustomization =
+        Config.retrieveLowLightConfigurationWizardCustomization(customization);
+    final FaceTecCustomization dynamicDimmingCustomization =
+        Config.retrieveDynamicDimmingConfigurationWizardCustomization(customization);
+    customization.getIdScanCustomization().customNFCStartingAnimation = R.drawable.facetec_nfc_starting_animation;
+    customization.getIdScanCustomization().customNFCScanningAnimation = R.drawable.facetec_nfc_scanning_animation;
+    customization.getIdScanCustomization().customNFCCardStartingAnimation =
+        R.drawable.facetec_nfc_card_starting_animation;
+    customization.getIdScanCustomization().customNFCCardScanningAnimation =
+        R.drawable.facetec_nfc_card_scanning_animation;
+
+    builtTheme = theme;
+    built = new Customizations(customization, lowLightCustomization, dynamicDimmingCustomization);
+    return built;
+  }
+
+  /**
+   * A deep copy of {@code source}. FaceTec has no copy API, so the fields of
+   * the customization and of every FaceTec object it holds are copied one by
+   * one; other values, such as strings and typefaces, are immutable and
+   * shared. If the SDK's classes can't be copied, the customization is built
+   * again instead.
+   */
+  static FaceTecCustomization copy(FaceTecCustomization source) {
+    try {
+      return (FaceTecCustomization) copyObject(source, new IdentityHashMap<Object, Object>());
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      Log.d("Capitual - SDK", "Can't copy the customization, building it again: " + e);
+      return Config.retrieveConfigurationWizardCustomization();
+    }
+  }
+
+  private static Object copyObject(Object source, IdentityHashMap<Object, Object> copies)
+      throws ReflectiveOperationException {
+    if (source == null || !isFaceTecClass(source.getClass())) {
+      return source;
+    }
+    final Object copied = copies.get(source);
+    if (copied != null) {
+      return copied;
+    }
+
+    final Constructor<?> constructor = source.getClass().getDeclaredConstructor();
+    constructor.setAccessible(true);
+    final Object copy = constructor.newInstance();
+    copies.put(source, copy);
+    for (Class<?> type = source.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+      for (Field field : type.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        field.setAccessible(true);
+        field.set(copy, copyValue(field.get(source), copies));
+      }
+    }
+    return copy;
+  }
+
+  private static Object copyValue(Object value, IdentityHashMap<Object, Object> copies)
+      throws ReflectiveOperationException {
+    if (value == null || !value.getClass().isArray()) {
+      return copyObject(value, copies);
+    }
+    final int length = Array.getLength(value);
+    final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+    for (int i = 0; i < length; i++) {
+      Array.set(copy, i, copyValue(Array.get(value, i), copies));
+    }
+    return copy;
+  }
+
+  private static boolean isFaceTecClass(Class<?> type) {
+    return !type.isEnum() && type.getName().startsWith("com.facetec.sdk.");
+  }
+}
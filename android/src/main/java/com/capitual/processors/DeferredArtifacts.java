@@ -0,0 +1,147 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okio.Buffer;
+
+/**
+ * Splits the fields of a session request into the ones the backend needs to
+ * return the {@code scanResultBlob} and the ones that can go up later.
+ *
+ * <p>Fields picked with the {@code deferredFields} option are always held
+ * back. On links measured as poor, the full quality audit trail image is held
+ * back as well. Held fields are handed to the {@link DeferredUploadQueue} once
+ * the backend processed the session's request, so they never compete with the
+ * upload the FaceTec UI waits on. Each record carries the session ID, which
+ * the session's requests send in the {@value SessionCallRegistry#SESSION_ID_HEADER}
+ * header, and the external database ref ID when the session has one. While
+ * the queue is not open, nothing is held back.
+ */
+public class DeferredArtifacts {
+  private static final String AUDIT_TRAIL_IMAGE = "auditTrailImage";
+  private static final Set<String> DEFERRABLE_FIELDS = new HashSet<>(Arrays.asList(
+      "data", AUDIT_TRAIL_IMAGE, "lowQualityAuditTrailImage", "idScanFrontImage", "idScanBackImage"));
+
+  private static Set<String> configuredFields = Collections.emptySet();
+
+  private final String sessionId;
+  @Nullable
+  private final String externalDatabaseRefID;
+  private final boolean isLinkPoor;
+  private final List<String> fields = new ArrayList<>();
+  private final List<Object> values = new ArrayList<>();
+
+  /**
+   * Sets the fields that never go in the session request. Unknown names are
+   * ignored.
+   */
+  public static synchronized void configure(@Nullable Object deferredFields) {
+    final Set<String> fields = new HashSet<>();
+    if (deferredFields instanceof List) {
+      for (Object field : (List<?>) deferredFields) {
+        if (isDeferrable(field)) {
+          fields.add(String.valueOf(field));
+        } else {
+          Log.d("Capitual - SDK", "Field " + field + " can't be deferred.");
+        }
+      }
+    }
+    configuredFields = fields;
+  }
+
+  /**
+   * Whether {@code field} is one of the fields that can be deferred.
+   */
+  public static boolean isDeferrable(@Nullable Object field) {
+    return DEFERRABLE_FIELDS.contains(String.valueOf(field));
+  }
+
+  private static synchronized boolean isConfigured(String field) {
+    return configuredFields.contains(field);
+  }
+
+  DeferredArtifacts(@NonNull String sessionId, @Nullable String externalDatabaseRefID) {
+    this.sessionId = sessionId;
+    this.externalDatabaseRefID = externalDatabaseRefID;
+    this.isLinkPoor = BandwidthEstimator.getQuality() == BandwidthEstimator.Quality.POOR;
+  }
+
+  private boolean shouldDefer(String field) {
+    if (!DeferredUploadQueue.isOpen()) {
+      return false;
+    }
+    return isConfigured(field) || (isLinkPoor && AUDIT_TRAIL_IMAGE.equals(field));
+  }
+
+  /**
+   * Returns {@code value} when it belongs in the session request, or holds it
+   * and returns {@code null}, which {@link JsonStreamRequestBody#put} skips.
+   */
+  @Nullable
+  <T> T keep(String field, @Nullable T value) {
+    if (value == null || !shouldDefer(field)) {
+      return value;
+    }
+    fields.add(field);
+    values.add(value);
+    return null;
+  }
+
+  /**
+   * Same as {@link #keep(String, Object)} for the first element of
+   * {@code values}, as sent by {@link JsonStreamRequestBody#putFirst}.
+   */
+  @Nullable
+  List<String> keepFirst(String field, @Nullable List<String> values) {
+    if (values == null || values.isEmpty()) {
+      return values;
+    }
+    return keep(field, values.get(0)) == null ? null : values;
+  }
+
+  /**
+   * The names of the held fields, sent with the session request so the
+   * backend knows what is still coming, or {@code null} when nothing is held.
+   */
+  @Nullable
+  List<String> getFields() {
+    return fields.isEmpty() ? null : fields;
+  }
+
+  /**
+   * Queues the held fields for upload. Called only once the backend processed
+   * the session's request; nothing is queued for cancelled sessions.
+   */
+  void upload() {
+    if (fields.isEmpty() || SessionCallRegistry.isCancelled(sessionId)) {
+      return;
+    }
+
+    final JsonStreamRequestBody record = new JsonStreamRequestBody()
+        .put("sessionId", sessionId)
+        .put("externalDatabaseRefID", externalDatabaseRefID);
+    for (int i = 0; i < fields.size(); i++) {
+      record.put(fields.get(i), values.get(i));
+    }
+
+    try {
+      final Buffer buffer = new Buffer();
+      record.writeTo(buffer);
+      DeferredUploadQueue.enqueue(buffer.readByteString());
+    } catch (IOException e) {
+      e.printStackTrace();
+      Log.d("Capitual - SDK", "Exception raised while queueing session artifacts.");
+    }
+  }
+}
@@ -0,0 +1,442 @@
+package com.capitual.processors;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Persistent queue of session artifacts waiting to be uploaded to
+ * {@code /session-artifacts}.
+ *
+ * <p>Records are appended to a journal in the app's files directory, each one
+ * prefixed by its length. A separate cursor file holds the offset of the first
+ * record not uploaded yet, so the queue survives process death without ever
+ * rewriting the journal; once every record is uploaded both files are reset.
+ * Records are sent in batches from a single background thread, which owns all
+ * of the queue's state, and only while no session request is in flight, so
+ * they never compete with the upload the FaceTec UI waits on. Failed batches
+ * are retried with exponential backoff.
+ *
+ * <p>Records are encrypted by {@link JournalCipher} and stamped with the time
+ * they were queued. Records older than {@link #MAX_RECORD_AGE_MILLIS}, and
+ * records that no longer decrypt because they were written by a previous
+ * install, are dropped instead of uploaded. When the device can't encrypt the
+ * journal, the queue stays closed and {@link DeferredArtifacts} holds nothing
+ * back.
+ */
+public class DeferredUploadQueue {
+  private static final String JOURNAL_FILE = "capface-uploads.journal";
+  private static final String CURSOR_FILE = "capface-uploads.cursor";
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+  private static final long MAX_JOURNAL_BYTES = 32 * 1024 * 1024;
+  private static final long MAX_BATCH_BYTES = 512 * 1024;
+  private static final int MAX_BATCH_RECORDS = 8;
+  private static final long MIN_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  static final long MAX_RECORD_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+  /**
+   * Tag of the batch requests, which are left out of the warm connection
+   * stats of {@link ConnectionWarmer}.
+   */
+  static final class Batch {
+  }
+
+  private static final ScheduledExecutorService executor = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+          Thread thread = new Thread(runnable, "CapFace deferred uploads");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  private static final Runnable drainTask = new Runnable() {
+    @Override
+    public void run() {
+      isDrainScheduled = false;
+      drain();
+    }
+  };
+
+  // Only touched from the executor thread.
+  private static File journal;
+  private static File cursorFile;
+  private static JournalCipher cipher;
+  private static long journalLength = 0;
+  private static long cursor = 0;
+  private static long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+  private static boolean isDrainScheduled = false;
+  private static boolean isWaitingForSessionCalls = false;
+  private static volatile Call activeBatch;
+  private static volatile boolean isOpen = false;
+
+  /**
+   * Opens the queue in the app's files directory and uploads whatever a
+   * previous process left behind. Called once the SDK is initialized.
+   */
+  public static void start(@NonNull Context context) {
+    start(context.getFilesDir(), null);
+  }
+
+  /**
+   * Opens the queue in {@code directory}, encrypting with {@code cipher}, or
+   * with the Keystore key when it is {@code null}.
+   */
+  static void start(@NonNull final File directory, @Nullable final JournalCipher cipher) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (journal == null) {
+          open(directory, cipher != null ? cipher : JournalCipher.fromKeystore());
+        }
+        scheduleDrain(0);
+      }
+    });
+  }
+
+  /**
+   * Whether records can be queued, which {@link DeferredArtifacts} checks
+   * before holding fields back.
+   */
+  static boolean isOpen() {
+    return isOpen;
+  }
+
+  static void enqueue(@NonNull final ByteString record) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (journal == null) {
+          Log.d("Capitual - SDK", "Deferred upload queue is not started, dropping session artifacts.");
+          return;
+        }
+        try {
+          append(record);
+          scheduleDrain(0);
+        } catch (IOException | GeneralSecurityException e) {
+          e.printStackTrace();
+          Log.d("Capitual - SDK", "Exception raised while writing the deferred upload queue.");
+        }
+      }
+    });
+  }
+
+  /**
+   * Cancels the batch on the wire, if any, to leave the link to the session
+   * request that just started. Called by {@link SessionCallRegistry}.
+   */
+  static void onSessionCallStarted() {
+    final Call batch = activeBatch;
+    if (batch != null) {
+      batch.cancel();
+    }
+  }
+
+  /**
+   * Resumes draining once the last session request is done. Called by
+   * {@link SessionCallRegistry}.
+   */
+  static void onSessionCallsDone() {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (isWaitingForSessionCalls) {
+          isWaitingForSessionCalls = false;
+          scheduleDrain(0);
+        }
+      }
+    });
+  }
+
+  private static void open(File directory, @Nullable JournalCipher journalCipher) {
+    if (journalCipher == null) {
+      Log.d("Capitual - SDK", "Deferred upload queue can't be encrypted, deferring nothing.");
+      new File(directory, JOURNAL_FILE).delete();
+      new File(directory, CURSOR_FILE).delete();
+      return;
+    }
+
+    journal = new File(directory, JOURNAL_FILE);
+    cursorFile = new File(directory, CURSOR_FILE);
+    cipher = journalCipher;
+    try {
+      journalLength = recover();
+      cursor = Math.min(readCursor(), journalLength);
+      purge();
+    } catch (IOException e) {
+      e.printStackTrace();
+      Log.d("Capitual - SDK", "Deferred upload queue is unreadable, starting over.");
+      journal.delete();
+      cursorFile.delete();
+      journalLength = 0;
+      cursor = 0;
+    }
+    isOpen = true;
+  }
+
+  /**
+   * Moves the cursor past the records at its head that are expired or were
+   * written with another key, and deletes the journal when nothing else is
+   * left. Dead records further on are dropped when the drain gets to them.
+   */
+  private static void purge() throws IOException {
+    long offset = cursor;
+    try (BufferedSource source = Okio.buffer(Okio.source(journal))) {
+      source.skip(offset);
+      while (offset < journalLength) {
+        final int recordLength = source.readInt();
+        if (unseal(source.readByteString(recordLength)) != null) {
+          break;
+        }
+        offset += 4 + recordLength;
+      }
+    }
+    if (offset != cursor) {
+      Log.d("Capitual - SDK", "Dropped expired or unreadable deferred session artifacts.");
+      writeCursor(offset);
+    }
+    if (cursor >= journalLength) {
+      reset();
+    }
+  }
+
+  /**
+   * Returns the length of the journal's complete records, cutting off a
+   * record left half written by a crash.
+   */
+  private static long recover() throws IOException {
+    if (!journal.exists()) {
+      return 0;
+    }
+    final long fileLength = journal.length();
+    long validLength = 0;
+    try (BufferedSource source = Okio.buffer(Okio.source(journal))) {
+      while (fileLength - validLength >= 4) {
+        final long recordLength = source.readInt() & 0xffffffffL;
+        if (recordLength > fileLength - validLength - 4) {
+          break;
+        }
+        source.skip(recordLength);
+        validLength += 4 + recordLength;
+      }
+    }
+    if (validLength < fileLength) {
+      try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+        file.setLength(validLength);
+      }
+    }
+    return validLength;
+  }
+
+  private static long readCursor() throws IOException {
+    if (!cursorFile.exists()) {
+      return 0;
+    }
+    try (BufferedSource source = Okio.buffer(Okio.source(cursorFile))) {
+      return source.exhausted() ? 0 : source.readLong();
+    }
+  }
+
+  private static void writeCursor(long offset) throws IOException {
+    final File temporary = new File(cursorFile.getPath() + ".tmp");
+    try (BufferedSink sink = Okio.buffer(Okio.sink(temporary))) {
+      sink.writeLong(offset);
+    }
+    if (!temporary.renameTo(cursorFile)) {
+      throw new IOException("Unable to replace " + cursorFile);
+    }
+    cursor = offset;
+  }
+
+  private static void append(ByteString record) throws IOException, GeneralSecurityException {
+    final ByteString sealed = cipher.seal(new Buffer()
+        .writeLong(System.currentTimeMillis())
+        .write(record)
+        .readByteString());
+    if (journalLength + 4 + sealed.size() > MAX_JOURNAL_BYTES) {
+      Log.d("Capitual - SDK", "Deferred upload queue is full, dropping session artifacts.");
+      return;
+    }
+    try (BufferedSink sink = Okio.buffer(Okio.appendingSink(journal))) {
+      sink.writeInt(sealed.size());
+      sink.write(sealed);
+    }
+    journalLength += 4 + sealed.size();
+  }
+
+  /**
+   * Returns the record {@code sealed} holds, or {@code null} when it is past
+   * {@link #MAX_RECORD_AGE_MILLIS} or does not decrypt with the current key.
+   */
+  @Nullable
+  private static ByteString unseal(ByteString sealed) {
+    final Buffer plaintext;
+    try {
+      plaintext = new Buffer().write(cipher.open(sealed));
+    } catch (GeneralSecurityException e) {
+      return null;
+    }
+    if (plaintext.size() < 8) {
+      return null;
+    }
+    // Wall clock time, as records outlive reboots; a clock set back by more
+    // than the maximum age also expires them.
+    final long ageMillis = System.currentTimeMillis() - plaintext.readLong();
+    if (Math.abs(ageMillis) > MAX_RECORD_AGE_MILLIS) {
+      return null;
+    }
+    return plaintext.readByteString();
+  }
+
+  private static void scheduleDrain(long delayMillis) {
+    if (isDrainScheduled) {
+      return;
+    }
+    isDrainScheduled = true;
+    executor.schedule(drainTask, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static void drain() {
+    if (journal == null) {
+      return;
+    }
+    try {
+      if (cursor >= journalLength) {
+        reset();
+        return;
+      }
+      if (SessionCallRegistry.hasCallsInFlight()) {
+        isWaitingForSessionCalls = true;
+        return;
+      }
+
+      final List<ByteString> records = new ArrayList<>();
+      final long batchEnd = readBatch(records);
+      // A batch of dead records only moves the cursor.
+      if (records.isEmpty() || upload(records)) {
+        writeCursor(batchEnd);
+        retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+        scheduleDrain(0);
+      } else if (SessionCallRegistry.hasCallsInFlight()) {
+        // Cancelled for a session request; not the backend's fault.
+        isWaitingForSessionCalls = true;
+      } else {
+        retryLater();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      Log.d("Capitual - SDK", "Exception raised while reading the deferred upload queue.");
+      retryLater();
+    }
+  }
+
+  private static void retryLater() {
+    scheduleDrain(retryDelayMillis);
+    retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis * 2);
+  }
+
+  private static void reset() throws IOException {
+    if (journalLength == 0) {
+      return;
+    }
+    if (!journal.delete()) {
+      throw new IOException("Unable to delete " + journal);
+    }
+    journalLength = 0;
+    writeCursor(0);
+  }
+
+  /**
+   * Reads records from the cursor on, up to the batch limits but always at
+   * least one, and returns the offset right after the last one read. Expired
+   * and unreadable records are skipped, so the batch may come back empty.
+   */
+  private static long readBatch(List<ByteString> records) throws IOException {
+    long offset = cursor;
+    long batchBytes = 0;
+    try (BufferedSource source = Okio.buffer(Okio.source(journal))) {
+      source.skip(offset);
+      while (offset < journalLength && records.size() < MAX_BATCH_RECORDS) {
+        final int recordLength = source.readInt();
+        if (!records.isEmpty() && batchBytes + recordLength > MAX_BATCH_BYTES) {
+          break;
+        }
+        final ByteString record = unseal(source.readByteString(recordLength));
+        if (record != null) {
+          records.add(record);
+        }
+        batchBytes += recordLength;
+        offset += 4 + recordLength;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Sends the batch as {@code {"artifacts": [...]}}. Returns whether the
+   * batch is done with: uploaded, or refused by the backend in a way retrying
+   * will not fix.
+   */
+  private static boolean upload(List<ByteString> records) {
+    final Buffer body = new Buffer().writeUtf8("{\"artifacts\":[");
+    for (int i = 0; i < records.size(); i++) {
+      if (i > 0) {
+        body.writeByte(',');
+      }
+      body.write(records.get(i));
+    }
+    body.writeUtf8("]}");
+
+    okhttp3.Request request = ApiEndpoint.SESSION_ARTIFACTS.newRequest()
+        .post(RequestBody.create(JSON, body.readByteString()))
+        .tag(Batch.class, new Batch())
+        .build();
+
+    final Call call = NetworkingHelpers.getApiClient().newCall(request);
+    activeBatch = call;
+    if (SessionCallRegistry.hasCallsInFlight()) {
+      call.cancel();
+    }
+    try (Response response = call.execute()) {
+      final int code = response.code();
+      if (response.isSuccessful()) {
+        return true;
+      }
+      if (code >= 400 && code < 500 && code != 408 && code != 429) {
+        Log.d("Capitual - HTTPS", "Session artifacts were refused with status " + code + ", dropping them.");
+        return true;
+      }
+      Log.d("Capitual - HTTPS", "Session artifacts upload failed with status " + code + ".");
+      return false;
+    } catch (IOException e) {
+      Log.d("Capitual - HTTPS", "Exception raised while uploading session artifacts.");
+      return false;
+    } finally {
+      activeBatch = null;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+
+/**
+ * Picks, for each {@link ApiEndpoint}, which of the configured base URLs its
+ * requests go to.
+ *
+ * <p>The base URLs are {@link Config#BaseURL} plus the optional {@code urls}
+ * of {@code initializeSdk}. Each one is probed with a {@code HEAD} request and
+ * ranked by round trip time. The URL of every endpoint on every base URL is
+ * parsed once, when the router is configured. A base URL that fails for an
+ * endpoint is skipped for that endpoint during {@link #FAILURE_COOLDOWN_MILLIS};
+ * {@link FailoverInterceptor} does the marking, so the next attempt of the
+ * request goes to the next base URL.
+ */
+public class EndpointRouter {
+  static final long FAILURE_COOLDOWN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * Tag of the probe requests, so their timings are not mistaken for the
+   * link's own round trip time.
+   */
+  static final class Probe {
+  }
+
+  /**
+   * The base URLs of one configuration. Requests keep the instance they
+   * started with, so a new configuration never mixes up candidate indexes.
+   */
+  static final class Routes {
+    private final HttpUrl[] baseUrls;
+    private final HttpUrl[][] urls;
+    private final long[] rttNanos;
+    private final long[][] failedUntilNanos;
+    private int lastSucceeded = -1;
+
+    Routes(List<HttpUrl> baseUrls) {
+      final ApiEndpoint[] endpoints = ApiEndpoint.values();
+      this.baseUrls = baseUrls.toArray(new HttpUrl[0]);
+      this.urls = new HttpUrl[this.baseUrls.length][endpoints.length];
+      this.rttNanos = new long[this.baseUrls.length];
+      this.failedUntilNanos = new long[this.baseUrls.length][endpoints.length];
+      for (int candidate = 0; candidate < this.baseUrls.length; candidate++) {
+        final String baseUrl = this.baseUrls[candidate].toString().replaceAll("/+$", "");
+        for (ApiEndpoint endpoint : endpoints) {
+          urls[candidate][endpoint.ordinal()] = HttpUrl.get(baseUrl + endpoint.path);
+        }
+        // Unprobed candidates keep the configured order.
+        rttNanos[candidate] = Long.MAX_VALUE - baseUrls.size() + candidate;
+      }
+    }
+
+    int size() {
+      return baseUrls.length;
+    }
+
+    HttpUrl url(int candidate, ApiEndpoint endpoint) {
+      return urls[candidate][endpoint.ordinal()];
+    }
+
+    /**
+     * Returns the candidate not skipped with the lowest round trip time,
+     * preferring the ones that have not failed recently, or -1 when all are
+     * skipped.
+     */
+    synchronized int pick(ApiEndpoint endpoint, @Nullable boolean[] skipped) {
+      final long now = System.nanoTime();
+      int best = -1;
+      boolean bestIsHealthy = false;
+      for (int candidate = 0; candidate < baseUrls.length; candidate++) {
+        if (skipped != null && skipped[candidate]) {
+          continue;
+        }
+        final boolean isHealthy = failedUntilNanos[candidate][endpoint.ordinal()] - now <= 0;
+        if (best == -1 || (isHealthy && !bestIsHealthy)
+            || (isHealthy == bestIsHealthy && rttNanos[candidate] < rttNanos[best])) {
+          best = candidate;
+          bestIsHealthy = isHealthy;
+        }
+      }
+      return best;
+    }
+
+    synchronized void markFailed(int candidate, ApiEndpoint endpoint) {
+      failedUntilNanos[candidate][endpoint.ordinal()] = System.nanoTime()
+          + TimeUnit.MILLISECONDS.toNanos(FAILURE_COOLDOWN_MILLIS);
+    }
+
+    synchronized void markSucceeded(int candidate, ApiEndpoint endpoint) {
+      failedUntilNanos[candidate][endpoint.ordinal()] = 0;
+      lastSucceeded = candidate;
+    }
+
+    private synchronized void recordRtt(int candidate, long elapsedNanos) {
+      rttNanos[candidate] = elapsedNanos;
+    }
+
+    private synchronized HttpUrl bestBaseUrl() {
+      int best = 0;
+      for (int candidate = 1; candidate < baseUrls.length; candidate++) {
+        if (rttNanos[candidate] < rttNanos[best]) {
+          best = candidate;
+        }
+      }
+      return baseUrls[best];
+    }
+
+    private synchronized HttpUrl lastUsedBaseUrl() {
+      return lastSucceeded == -1 ? bestBaseUrl() : baseUrls[lastSucceeded];
+    }
+  }
+
+  private static Routes routes;
+
+  /**
+   * Sets the base URLs: {@code primaryUrl} first, then the valid entries of
+   * {@code urls} that are not already in the list.
+   */
+  public static synchronized void configure(@Nullable String primaryUrl, @Nullable Object urls) {
+    final List<HttpUrl> baseUrls = new ArrayList<>();
+    addBaseUrl(baseUrls, primaryUrl);
+    if (urls instanceof List) {
+      for (Object url : (List<?>) urls) {
+        addBaseUrl(baseUrls, url == null ? null : url.toString());
+      }
+    }
+    routes = baseUrls.isEmpty() ? null : new Routes(baseUrls);
+  }
+
+  private static void addBaseUrl(List<HttpUrl> baseUrls, @Nullable String url) {
+    if (url == null) {
+      return;
+    }
+    final HttpUrl baseUrl = HttpUrl.parse(url);
+    if (baseUrl == null) {
+      Log.d("Capitual - SDK", "Ignoring invalid base URL " + url + ".");
+    } else if (!baseUrls.contains(baseUrl)) {
+      baseUrls.add(baseUrl);
+    }
+  }
+
+  @Nullable
+  static synchronized Routes routes() {
+    if (routes == null && Config.BaseURL != null) {
+      configure(Config.BaseURL, null);
+    }
+    return routes;
+  }
+
+  /**
+   * The URL requests to {@code endpoint} currently go to.
+   */
+  @Nullable
+  public static HttpUrl url(ApiEndpoint endpoint) {
+    final Routes current = routes();
+    return current == null ? null : current.url(current.pick(endpoint, null), endpoint);
+  }
+
+  /**
+   * The base URL with the lowest measured round trip time.
+   */
+  @Nullable
+  public static HttpUrl baseUrl() {
+    final Routes current = routes();
+    return current == null ? null : current.bestBaseUrl();
+  }
+
+  /**
+   * The base URL that last answered an API request, which after a failover
+   * may not be the fastest one. Until a request was answered, the fastest
+   * base URL.
+   */
+  @Nullable
+  public static HttpUrl lastUsedBaseUrl() {
+    final Routes current = routes();
+    return current == null ? null : current.lastUsedBaseUrl();
+  }
+
+  /**
+   * Measures the round trip time to every base URL. A single base URL is not
+   * worth ranking, so it is only preconnected.
+   */
+  public static void probe() {
+    final Routes current = routes();
+    if (current == null || current.size() < 2) {
+      ConnectionWarmer.preconnect();
+      return;
+    }
+
+    for (int candidate = 0; candidate < current.size(); candidate++) {
+      final int probedCandidate = candidate;
+      okhttp3.Request request = new okhttp3.Request.Builder()
+          .url(current.baseUrls[candidate])
+          .head()
+          .tag(Probe.class, new Probe())
+          .build();
+
+      NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+          Log.d("Capitual - HTTPS", "Exception raised while probing " + current.baseUrls[probedCandidate] + ".");
+          for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+            current.markFailed(probedCandidate, endpoint);
+          }
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+          // The request was sent on an open connection, so this is one round
+          // trip plus the server's time to answer a HEAD request.
+          final long elapsedMillis = response.receivedResponseAtMillis() - response.sentRequestAtMillis();
+          current.recordRtt(probedCandidate, TimeUnit.MILLISECONDS.toNanos(Math.max(0, elapsedMillis)));
+          response.close();
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.capitual.processors;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facetec.sdk.FaceTecFaceScanProcessor;
+import com.facetec.sdk.FaceTecFaceScanResultCallback;
+import com.facetec.sdk.FaceTecIDScanProcessor;
+import com.facetec.sdk.FaceTecIDScanResult;
+import com.facetec.sdk.FaceTecIDScanResultCallback;
+import com.facetec.sdk.FaceTecIDScanStatus;
+import com.facetec.sdk.FaceTecSessionActivity;
+import com.facetec.sdk.FaceTecSessionResult;
+import com.facetec.sdk.FaceTecSessionStatus;
+
+import java.util.List;
+
+/**
+ * The part of the FaceTec SDK the processors talk to, as interfaces: the
+ * scans a session produces, the callback that answers them and the launch of
+ * the session. The FaceTec types are adapted here only, so the upload logic of
+ * the processors also runs against fakes on a plain JVM.
+ */
+public final class FaceTecBridge {
+  interface FaceScan {
+    boolean isCompleted();
+
+    String getFaceScanBase64();
+
+    String getAuditTrailImage();
+
+    String getLowQualityAuditTrailImage();
+  }
+
+  interface IDScan {
+    boolean isCompleted();
+
+    String getIDScanBase64();
+
+    List<String> getFrontImagesCompressedBase64();
+
+    List<String> getBackImagesCompressedBase64();
+  }
+
+  /**
+   * How a processor answers the SDK while it waits on a scan.
+   */
+  interface ScanResultCallback {
+    void uploadProgress(float uploadProgressPercent);
+
+    boolean proceedToNextStep(String scanResultBlob);
+
+    void cancel();
+  }
+
+  interface FaceScanProcessor {
+    void processFaceScan(FaceScan sessionResult, ScanResultCallback faceScanResultCallback);
+  }
+
+  interface IDScanProcessor {
+    void processIDScan(IDScan idScanResult, ScanResultCallback idScanResultCallback);
+  }
+
+  /**
+   * Starts the capture of a session, which ends up calling the processor back
+   * with its scans.
+   */
+  interface SessionLauncher {
+    void launch(@Nullable Context context, @NonNull Processor processor, @NonNull String sessionToken);
+  }
+
+  private static final SessionLauncher FACETEC_LAUNCHER = new SessionLauncher() {
+    @Override
+    public void launch(@Nullable Context context, @NonNull Processor processor, @NonNull String sessionToken) {
+      if (processor instanceof FaceTecFaceScanProcessor && processor instanceof FaceTecIDScanProcessor) {
+        FaceTecSessionActivity.createAndLaunchSession(context, (FaceTecFaceScanProcessor) processor,
+            (FaceTecIDScanProcessor) processor, sessionToken);
+      } else if (processor instanceof FaceTecFaceScanProcessor) {
+        FaceTecSessionActivity.createAndLaunchSession(context, (FaceTecFaceScanProcessor) processor, sessionToken);
+      } else {
+        FaceTecSessionActivity.createAndLaunchSession(context, (FaceTecIDScanProcessor) processor, sessionToken);
+      }
+    }
+  };
+
+  private static volatile SessionLauncher launcher = FACETEC_LAUNCHER;
+
+  private FaceTecBridge() {
+  }
+
+  static void launch(@Nullable Context context, @NonNull Processor processor, @NonNull String sessionToken) {
+    launcher.launch(context, processor, sessionToken);
+  }
+
+  /**
+   * Replaces the FaceTec session activity, or restores it when
+   * {@code sessionLauncher} is null.
+   */
+  static void setLauncher(@Nullable SessionLauncher sessionLauncher) {
+    launcher = sessionLauncher == null ? FACETEC_LAUNCHER : sessionLauncher;
+  }
+
+  static FaceScan faceScan(final FaceTecSessionResult sessionResult) {
+    return new FaceScan() {
+      @Override
+      public boolean isCompleted() {
+        return sessionResult.getStatus() == FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY;
+      }
+
+      @Override
+      public String getFaceScanBase64() {
+        return sessionResult.getFaceScanBase64();
+      }
+
+      @Override
+      public String getAuditTrailImage() {
+        return sessionResult.getAuditTrailCompressedBase64()[0];
+      }
+
+      @Override
+      public String getLowQualityAuditTrailImage() {
+        return sessionResult.getLowQualityAuditTrailCompressedBase64()[0];
+      }
+    };
+  }
+
+  static IDScan idScan(final FaceTecIDScanResult idScanResult) {
+    return new IDScan() {
+      @Override
+      public boolean isCompleted() {
+        return idScanResult.getStatus() == FaceTecIDScanStatus.SUCCESS;
+      }
+
+      @Override
+      public String getIDScanBase64() {
+        return idScanResult.getIDScanBase64();
+      }
+
+      @Override
+      public List<String> getFrontImagesCompressedBase64() {
+        return idScanResult.getFrontImagesCompressedBase64();
+      }
+
+      @Override
+      public List<String> getBackImagesCompressedBase64() {
+        return idScanResult.getBackImagesCompressedBase64();
+      }
+    };
+  }
+
+  static ScanResultCallback callback(final FaceTecFaceScanResultCallback faceScanResultCallback) {
+    return new ScanResultCallback() {
+      @Override
+      public void uploadProgress(float uploadProgressPercent) {
+        faceScanResultCallback.uploadProgress(uploadProgressPercent);
+      }
+
+      @Override
+      public boolean proceedToNextStep(String scanResultBlob) {
+        return faceScanResultCallback.proceedToNextStep(scanResultBlob);
+      }
+
+      @Override
+      public void cancel() {
+        faceScanResultCallback.cancel();
+      }
+    };
+  }
+
+  static ScanResultCallback callback(final FaceTecIDScanResultCallback idScanResultCallback) {
+    return new ScanResultCallback() {
+      @Override
+      public void uploadProgress(float uploadProgressPercent) {
+        idScanResultCallback.uploadProgress(uploadProgressPercent);
+      }
+
+      @Override
+      public boolean proceedToNextStep(String scanResultBlob) {
+        return idScanResultCallback.proceedToNextStep(scanResultBlob);
+      }
+
+      @Override
+      public void cancel() {
+        idScanResultCallback.cancel();
+      }
+    };
+  }
+}
@@ -0,0 +1,62 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends each attempt of an {@link ApiEndpoint} request to the base URL picked
+ * by {@link EndpointRouter}. When that base URL fails with a network error or
+ * a gateway error, it is marked as failed for the endpoint, so the next
+ * attempt of {@link RetryInterceptor} goes to the next base URL. Failing over
+ * is thus bounded by the endpoint's attempts and retry delay budget. Hedged
+ * copies go to the second best base URL.
+ */
+class FailoverInterceptor implements Interceptor {
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final ApiEndpoint endpoint = request.tag(ApiEndpoint.class);
+    final EndpointRouter.Routes routes = EndpointRouter.routes();
+    if (endpoint == null || routes == null) {
+      return chain.proceed(request);
+    }
+
+    final boolean[] skipped = new boolean[routes.size()];
+    if (request.tag(HedgedCall.Hedge.class) != null && routes.size() > 1) {
+      // The first copy went to the best base URL.
+      skipped[routes.pick(endpoint, null)] = true;
+    }
+    final int candidate = routes.pick(endpoint, skipped);
+    final Request routed = request.newBuilder()
+        .url(routes.url(candidate, endpoint))
+        .build();
+
+    final Response response;
+    try {
+      response = chain.proceed(routed);
+    } catch (IOException e) {
+      // A canceled call is not the base URL's fault.
+      if (!chain.call().isCanceled()) {
+        routes.markFailed(candidate, endpoint);
+      }
+      throw e;
+    }
+
+    if (isGatewayFailure(response.code())) {
+      routes.markFailed(candidate, endpoint);
+    } else {
+      routes.markSucceeded(candidate, endpoint);
+    }
+    return response;
+  }
+
+  private static boolean isGatewayFailure(int code) {
+    return code == 502 || code == 503 || code == 504;
+  }
+}
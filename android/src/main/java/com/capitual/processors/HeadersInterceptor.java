@@ -0,0 +1,34 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Adds the CapFace headers to every request of the API client. The header
+ * sets are compiled by {@link Config} when the device key or the custom
+ * headers change, so this only copies them. Headers already set on the
+ * request win.
+ */
+class HeadersInterceptor implements Interceptor {
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    final Request request = chain.request();
+    final String method = request.method();
+    final Headers headers = Config.getHeaders(method.equals("HEAD") ? "GET" : method);
+
+    final Request.Builder builder = request.newBuilder();
+    for (int i = 0, size = headers.size(); i < size; i++) {
+      if (request.header(headers.name(i)) == null) {
+        builder.addHeader(headers.name(i), headers.value(i));
+      }
+    }
+    return chain.proceed(builder.build());
+  }
+}
@@ -0,0 +1,201 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends an idempotent request and, when it has not answered after a delay,
+ * a second copy of it. The first answer wins and the other call is cancelled.
+ * Only meant for small requests whose latency matters, like the session token.
+ */
+class HedgedCall {
+  private static final ScheduledExecutorService scheduler = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+          Thread thread = new Thread(runnable, "CapFace hedged calls");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * Tag of the second copy, which {@link FailoverInterceptor} sends to another
+   * base URL when there is one.
+   */
+  static final class Hedge {
+  }
+
+  /**
+   * When to hedge: after a fixed delay or the rolling p90 of the answered
+   * calls, and at most for {@link #MAX_HEDGE_RATIO} of the calls.
+   */
+  static final class Policy {
+    static final int LATENCY_SAMPLES = 32;
+    static final int MIN_LATENCY_SAMPLES = 5;
+    static final long DEFAULT_DELAY_MILLIS = 1000;
+    static final double MAX_HEDGE_RATIO = 0.1;
+
+    private final long[] latenciesMillis = new long[LATENCY_SAMPLES];
+    private int nextLatency = 0;
+    private int latencies = 0;
+    private boolean isEnabled = false;
+    private long fixedDelayMillis = 0;
+    // Each call earns a fraction of a hedge; a hedge spends a whole one.
+    private double hedgeCredits = 1;
+
+    synchronized void configure(boolean isEnabled, @Nullable Long delayMillis) {
+      this.isEnabled = isEnabled;
+      this.fixedDelayMillis = delayMillis != null && delayMillis > 0 ? delayMillis : 0;
+    }
+
+    synchronized boolean isEnabled() {
+      return isEnabled;
+    }
+
+    synchronized long delayMillis() {
+      if (fixedDelayMillis > 0) {
+        return fixedDelayMillis;
+      }
+      if (latencies < MIN_LATENCY_SAMPLES) {
+        return DEFAULT_DELAY_MILLIS;
+      }
+      final long[] sorted = Arrays.copyOf(latenciesMillis, latencies);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(latencies * 0.9) - 1];
+    }
+
+    synchronized void onCall() {
+      hedgeCredits = Math.min(1, hedgeCredits + MAX_HEDGE_RATIO);
+    }
+
+    synchronized boolean tryHedge() {
+      if (hedgeCredits < 1) {
+        return false;
+      }
+      hedgeCredits -= 1;
+      return true;
+    }
+
+    synchronized void recordLatency(long millis) {
+      latenciesMillis[nextLatency] = millis;
+      nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+      latencies = Math.min(LATENCY_SAMPLES, latencies + 1);
+    }
+  }
+
+  private final OkHttpClient client;
+  private final Request request;
+  private final Policy policy;
+  private final Callback callback;
+  private final long startNanos = System.nanoTime();
+  private Call primary;
+  private Call hedge;
+  private ScheduledFuture<?> hedgeTask;
+  private boolean isSettled = false;
+  private int pendingCalls = 0;
+
+  private HedgedCall(OkHttpClient client, Request request, Policy policy, Callback callback) {
+    this.client = client;
+    this.request = request;
+    this.policy = policy;
+    this.callback = callback;
+  }
+
+  /**
+   * Enqueues {@code request}, hedged when the policy is enabled. The callback
+   * runs once, with the first answer, or with the last failure when every
+   * copy failed.
+   */
+  static void enqueue(@NonNull OkHttpClient client, @NonNull Request request, @NonNull Policy policy,
+      @NonNull Callback callback) {
+    new HedgedCall(client, request, policy, callback).start();
+  }
+
+  private void start() {
+    policy.onCall();
+    synchronized (this) {
+      primary = client.newCall(request);
+      pendingCalls = 1;
+      if (policy.isEnabled()) {
+        hedgeTask = scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            startHedge();
+          }
+        }, policy.delayMillis(), TimeUnit.MILLISECONDS);
+      }
+    }
+    primary.enqueue(new AttemptCallback());
+  }
+
+  private void startHedge() {
+    final Call call;
+    synchronized (this) {
+      if (isSettled || !policy.tryHedge()) {
+        return;
+      }
+      call = client.newCall(request.newBuilder()
+          .tag(Hedge.class, new Hedge())
+          .build());
+      hedge = call;
+      pendingCalls++;
+    }
+    call.enqueue(new AttemptCallback());
+  }
+
+  private class AttemptCallback implements Callback {
+    @Override
+    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+      synchronized (HedgedCall.this) {
+        pendingCalls--;
+        // Another copy may still answer.
+        if (isSettled || pendingCalls > 0) {
+          return;
+        }
+        settle();
+      }
+      callback.onFailure(call, e);
+    }
+
+    @Override
+    public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+      final Call other;
+      synchronized (HedgedCall.this) {
+        pendingCalls--;
+        if (isSettled) {
+          response.close();
+          return;
+        }
+        settle();
+        other = call == primary ? hedge : primary;
+      }
+      if (other != null) {
+        other.cancel();
+      }
+      policy.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      callback.onResponse(call, response);
+    }
+  }
+
+  private void settle() {
+    isSettled = true;
+    if (hedgeTask != null) {
+      hedgeTask.cancel(false);
+    }
+  }
+}
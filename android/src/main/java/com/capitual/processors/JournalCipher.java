@@ -0,0 +1,102 @@
+package com.capitual.processors;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import okio.ByteString;
+
+/**
+ * Encrypts the records of the {@link DeferredUploadQueue} journal with
+ * AES-GCM, so the session artifacts it holds are never on disk in the clear.
+ *
+ * <p>The key lives in the Android Keystore and never leaves it. It is removed
+ * with the app, so a journal restored from a backup of a previous install no
+ * longer decrypts and its records are dropped. Each sealed record is the
+ * random 12 byte IV followed by the ciphertext and its tag.
+ */
+final class JournalCipher {
+  private static final String KEYSTORE = "AndroidKeyStore";
+  private static final String KEY_ALIAS = "capface-uploads";
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final int IV_BYTES = 12;
+  private static final int TAG_BITS = 128;
+
+  private final SecretKey key;
+
+  JournalCipher(@NonNull SecretKey key) {
+    this.key = key;
+  }
+
+  /**
+   * The cipher of the app's Keystore key, creating the key on first use, or
+   * {@code null} when the Keystore can't hold AES keys, before Android 6.0.
+   */
+  @Nullable
+  static JournalCipher fromKeystore() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      return null;
+    }
+    try {
+      final KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+      keyStore.load(null);
+      final Key key = keyStore.getKey(KEY_ALIAS, null);
+      if (key instanceof SecretKey) {
+        return new JournalCipher((SecretKey) key);
+      }
+
+      final KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+      generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+          KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+          .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+          .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+          .setKeySize(256)
+          .build());
+      return new JournalCipher(generator.generateKey());
+    } catch (GeneralSecurityException | IOException e) {
+      e.printStackTrace();
+      Log.d("Capitual - SDK", "Exception raised while loading the deferred upload queue key.");
+      return null;
+    }
+  }
+
+  ByteString seal(@NonNull ByteString plaintext) throws GeneralSecurityException {
+    final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+    // Keystore keys refuse caller provided IVs, so the cipher picks one.
+    cipher.init(Cipher.ENCRYPT_MODE, key);
+    final byte[] iv = cipher.getIV();
+    final byte[] ciphertext = cipher.doFinal(plaintext.toByteArray());
+    final byte[] sealed = Arrays.copyOf(iv, iv.length + ciphertext.length);
+    System.arraycopy(ciphertext, 0, sealed, iv.length, ciphertext.length);
+    return ByteString.of(sealed);
+  }
+
+  /**
+   * Decrypts a record sealed by {@link #seal}, throwing when it was sealed
+   * with another key or was tampered with.
+   */
+  ByteString open(@NonNull ByteString sealed) throws GeneralSecurityException {
+    if (sealed.size() < IV_BYTES) {
+      throw new GeneralSecurityException("Sealed record is too short.");
+    }
+    final byte[] bytes = sealed.toByteArray();
+    final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 0, IV_BYTES));
+    return ByteString.of(cipher.doFinal(bytes, IV_BYTES, bytes.length - IV_BYTES));
+  }
+}
@@ -0,0 +1,217 @@
+package com.capitual.processors;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Utf8;
+
+/**
+ * JSON request body that serializes its fields straight into the OkHttp sink.
+ * The large base64 values (face scans, audit trail and ID images) are never
+ * copied into an intermediate JSON string, so writing the body only costs the
+ * sink's own segments on top of the source strings.
+ */
+class JsonStreamRequestBody extends RequestBody {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  private final List<String> keys = new ArrayList<>();
+  private final List<Object> values = new ArrayList<>();
+  private long contentLength = -1L;
+
+  /**
+   * Adds a field to the body. Like {@code JSONObject.put}, a {@code null} value
+   * leaves the field out. Values may be strings, numbers, booleans, maps and
+   * lists, as produced by {@code ReadableMap.toHashMap()}.
+   */
+  JsonStreamRequestBody put(String key, @Nullable Object value) {
+    if (value != null) {
+      keys.add(key);
+      values.add(value);
+      contentLength = -1L;
+    }
+    return this;
+  }
+
+  /**
+   * Adds the first element of {@code values} under {@code key}, if there is one.
+   */
+  JsonStreamRequestBody putFirst(String key, @Nullable List<String> values) {
+    return put(key, values == null || values.isEmpty() ? null : values.get(0));
+  }
+
+  @Override
+  public MediaType contentType() {
+    return JSON;
+  }
+
+  @Override
+  public long contentLength() throws IOException {
+    if (contentLength == -1L) {
+      contentLength = writeObject(null, keys, values);
+    }
+    return contentLength;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    writeObject(sink, keys, values);
+  }
+
+  /**
+   * Writes the object to {@code sink}, or only measures it when {@code sink} is
+   * null. Both paths share this code so the announced length always matches
+   * the bytes written.
+   */
+  private static long writeObject(@Nullable BufferedSink sink, List<String> keys, List<?> values)
+      throws IOException {
+    long size = 2;
+    if (sink != null) {
+      sink.writeByte('{');
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      if (i > 0) {
+        size += writeAscii(sink, ",");
+      }
+      size += writeString(sink, keys.get(i));
+      size += writeAscii(sink, ":");
+      size += writeValue(sink, values.get(i));
+    }
+    if (sink != null) {
+      sink.writeByte('}');
+    }
+    return size;
+  }
+
+  private static long writeValue(@Nullable BufferedSink sink, @Nullable Object value) throws IOException {
+    if (value == null) {
+      return writeAscii(sink, "null");
+    }
+    if (value instanceof String) {
+      return writeString(sink, (String) value);
+    }
+    if (value instanceof Boolean) {
+      return writeAscii(sink, value.toString());
+    }
+    if (value instanceof Number) {
+      return writeAscii(sink, numberToString((Number) value));
+    }
+    if (value instanceof Map) {
+      List<String> mapKeys = new ArrayList<>();
+      List<Object> mapValues = new ArrayList<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        mapKeys.add(String.valueOf(entry.getKey()));
+        mapValues.add(entry.getValue());
+      }
+      return writeObject(sink, mapKeys, mapValues);
+    }
+    if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      long size = 2;
+      if (sink != null) {
+        sink.writeByte('[');
+      }
+      for (int i = 0; i < list.size(); i++) {
+        if (i > 0) {
+          size += writeAscii(sink, ",");
+        }
+        size += writeValue(sink, list.get(i));
+      }
+      if (sink != null) {
+        sink.writeByte(']');
+      }
+      return size;
+    }
+    return writeString(sink, value.toString());
+  }
+
+  private static String numberToString(Number number) {
+    if (number instanceof Double || number instanceof Float) {
+      double value = number.doubleValue();
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        return "null";
+      }
+      if (value == (long) value) {
+        return Long.toString((long) value);
+      }
+      return Double.toString(value);
+    }
+    return number.toString();
+  }
+
+  private static long writeAscii(@Nullable BufferedSink sink, String value) throws IOException {
+    if (sink != null) {
+      sink.writeUtf8(value);
+    }
+    return value.length();
+  }
+
+  /**
+   * Writes a quoted JSON string. Runs of characters that need no escaping,
+   * which is every character of a base64 payload, go to the sink in one call.
+   */
+  private static long writeString(@Nullable BufferedSink sink, String value) throws IOException {
+    long size = 2;
+    if (sink != null) {
+      sink.writeByte('"');
+    }
+    int runStart = 0;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final String escaped = escape(value.charAt(i));
+      if (escaped == null) {
+        continue;
+      }
+      if (runStart < i) {
+        size += Utf8.size(value, runStart, i);
+        if (sink != null) {
+          sink.writeUtf8(value, runStart, i);
+        }
+      }
+      size += writeAscii(sink, escaped);
+      runStart = i + 1;
+    }
+    if (runStart < length) {
+      size += Utf8.size(value, runStart, length);
+      if (sink != null) {
+        sink.writeUtf8(value, runStart, length);
+      }
+    }
+    if (sink != null) {
+      sink.writeByte('"');
+    }
+    return size;
+  }
+
+  @Nullable
+  private static String escape(char c) {
+    switch (c) {
+      case '"':
+        return "\\\"";
+      case '\\':
+        return "\\\\";
+      case '\b':
+        return "\\b";
+      case '\f':
+        return "\\f";
+      case '\n':
+        return "\\n";
+      case '\r':
+        return "\\r";
+      case '\t':
+        return "\\t";
+      case '\u2028':
+        return "\\u2028";
+      case '\u2029':
+        return "\\u2029";
+      default:
+        return c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histograms per {@link ApiEndpoint} and {@link Metric},
+ * for on-device percentiles.
+ *
+ * <p>Values are kept in microseconds, in log buckets of 8 sub-buckets per
+ * power of two, so a percentile is off by at most 12.5%. Recording is a few
+ * atomic increments without locks; every histogram is allocated up front.
+ * {@link #snapshotAndReset()} drains the counts, so each snapshot covers the
+ * time since the previous one.
+ */
+public class LatencyHistograms {
+  public enum Metric {
+    /** Whole call, retries included. The token fetch is the CALL of SESSION_TOKEN. */
+    CALL,
+    /** Writing the request body of one attempt. */
+    UPLOAD,
+    /** From the request sent to the response headers of one attempt. */
+    SERVER,
+    /** From the {@code handle*} call to the resolved promise. Rejected sessions are left out. */
+    SESSION
+  }
+
+  static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final long MAX_VALUE_MICROS = (1L << 32) - 1;
+  static final int BUCKETS = bucketIndex(MAX_VALUE_MICROS) + 1;
+
+  private static final Histogram[][] histograms = new Histogram[ApiEndpoint.values().length][Metric.values().length];
+
+  static {
+    for (int endpoint = 0; endpoint < histograms.length; endpoint++) {
+      for (int metric = 0; metric < histograms[endpoint].length; metric++) {
+        histograms[endpoint][metric] = new Histogram();
+      }
+    }
+  }
+
+  static final class Histogram {
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void record(long micros) {
+      final long value = Math.max(0, Math.min(MAX_VALUE_MICROS, micros));
+      counts.incrementAndGet(bucketIndex(value));
+      sumMicros.addAndGet(value);
+      long max = maxMicros.get();
+      while (value > max && !maxMicros.compareAndSet(max, value)) {
+        max = maxMicros.get();
+      }
+    }
+
+    /**
+     * Drains the histogram. Values recorded while draining land either in
+     * this snapshot or in the next one.
+     */
+    long[] drain() {
+      final long[] drained = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        drained[i] = counts.getAndSet(i, 0);
+      }
+      return drained;
+    }
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * The highest value that falls in bucket {@code index}.
+   */
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+
+  public static void record(@Nullable ApiEndpoint endpoint, @NonNull Metric metric, long nanos) {
+    if (endpoint != null && nanos >= 0) {
+      histograms[endpoint.ordinal()][metric.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+  }
+
+  /**
+   * Returns the percentiles recorded since the previous snapshot, by endpoint
+   * path and metric, in milliseconds, and starts over. Empty histograms are
+   * left out.
+   */
+  public static WritableMap snapshotAndReset() {
+    WritableMap snapshot = Arguments.createMap();
+    for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+      WritableMap endpointSnapshot = null;
+      for (Metric metric : Metric.values()) {
+        final Histogram histogram = histograms[endpoint.ordinal()][metric.ordinal()];
+        final long[] counts = histogram.drain();
+        final long sumMicros = histogram.sumMicros.getAndSet(0);
+        final long maxMicros = histogram.maxMicros.getAndSet(0);
+
+        long count = 0;
+        for (long bucketCount : counts) {
+          count += bucketCount;
+        }
+        if (count == 0) {
+          continue;
+        }
+
+        WritableMap metricSnapshot = Arguments.createMap();
+        metricSnapshot.putDouble("count", count);
+        metricSnapshot.putDouble("meanMs", sumMicros / 1000.0 / count);
+        metricSnapshot.putDouble("p50Ms", percentileMicros(counts, count, maxMicros, 0.5) / 1000.0);
+        metricSnapshot.putDouble("p90Ms", percentileMicros(counts, count, maxMicros, 0.9) / 1000.0);
+        metricSnapshot.putDouble("p99Ms", percentileMicros(counts, count, maxMicros, 0.99) / 1000.0);
+        metricSnapshot.putDouble("maxMs", maxMicros / 1000.0);
+        if (endpointSnapshot == null) {
+          endpointSnapshot = Arguments.createMap();
+        }
+        endpointSnapshot.putMap(metric.name().toLowerCase(Locale.ROOT), metricSnapshot);
+      }
+      if (endpointSnapshot != null) {
+        snapshot.putMap(endpoint.path, endpointSnapshot);
+      }
+    }
+    return snapshot;
+  }
+
+  static long percentileMicros(long[] counts, long count, long maxMicros, double percentile) {
+    final long rank = Math.max(1, (long) Math.ceil(count * percentile));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), maxMicros);
+      }
+    }
+    return maxMicros;
+  }
+}
@@ -0,0 +1,152 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * Per-call OkHttp event listener of the API client. It tells whether an upload
+ * went out on an already open connection, feeds round trip samples to
+ * {@link BandwidthEstimator} and adds the DNS, connect, TLS, request body and
+ * time to first byte timings of session calls to their {@link SessionMetrics}.
+ * Call, upload and server times of {@link ApiEndpoint} requests also go to
+ * {@link LatencyHistograms}.
+ */
+class NetworkEventListener extends EventListener {
+  static final EventListener.Factory FACTORY = new EventListener.Factory() {
+    @NonNull
+    @Override
+    public EventListener create(@NonNull Call call) {
+      return new NetworkEventListener();
+    }
+  };
+
+  private boolean isUpload = false;
+  private boolean isUntaggedHead = false;
+  private boolean openedConnection = false;
+  @Nullable
+  private String sessionId;
+  @Nullable
+  private ApiEndpoint endpoint;
+  private long callStartNanos;
+  private long dnsStartNanos;
+  private long connectStartNanos;
+  private long secureConnectStartNanos;
+  private long requestHeadersEndNanos;
+  private long requestBodyStartNanos;
+  private long requestSentNanos;
+
+  @Override
+  public void callStart(@NonNull Call call) {
+    final SessionCallRegistry.SessionTag sessionTag = call.request().tag(SessionCallRegistry.SessionTag.class);
+    sessionId = sessionTag == null ? null : sessionTag.sessionId;
+    endpoint = call.request().tag(ApiEndpoint.class);
+    callStartNanos = System.nanoTime();
+    // Deferred batches and hedges go out in the background, whether or not a
+    // warm connection is waiting, so only session uploads count.
+    isUpload = "POST".equals(call.request().method())
+        && call.request().tag(DeferredUploadQueue.Batch.class) == null
+        && call.request().tag(HedgedCall.Hedge.class) == null;
+    isUntaggedHead = "HEAD".equals(call.request().method()) && call.request().tag(EndpointRouter.Probe.class) == null;
+  }
+
+  @Override
+  public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+    dnsStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+    SessionMetrics.addNetworkTiming(sessionId, "dns", System.nanoTime() - dnsStartNanos);
+  }
+
+  @Override
+  public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+    openedConnection = true;
+    connectStartNanos = System.nanoTime();
+    secureConnectStartNanos = 0;
+  }
+
+  @Override
+  public void secureConnectStart(@NonNull Call call) {
+    secureConnectStartNanos = System.nanoTime();
+    final long handshakeNanos = secureConnectStartNanos - connectStartNanos;
+    SessionMetrics.addNetworkTiming(sessionId, "connect", handshakeNanos);
+    // The TCP handshake took one round trip. Route probes may reach base URLs
+    // other than the one in use, so they are left out.
+    if (call.request().tag(EndpointRouter.Probe.class) == null) {
+      BandwidthEstimator.recordRtt(handshakeNanos);
+    }
+  }
+
+  @Override
+  public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+    SessionMetrics.addNetworkTiming(sessionId, "tls", System.nanoTime() - secureConnectStartNanos);
+  }
+
+  @Override
+  public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy,
+      @Nullable Protocol protocol) {
+    if (secureConnectStartNanos == 0) {
+      SessionMetrics.addNetworkTiming(sessionId, "connect", System.nanoTime() - connectStartNanos);
+    }
+  }
+
+  @Override
+  public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+    requestHeadersEndNanos = System.nanoTime();
+    requestSentNanos = requestHeadersEndNanos;
+  }
+
+  @Override
+  public void requestBodyStart(@NonNull Call call) {
+    requestBodyStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public void requestBodyEnd(@NonNull Call call, long byteCount) {
+    requestSentNanos = System.nanoTime();
+    SessionMetrics.addNetworkTiming(sessionId, "requestBody", requestSentNanos - requestBodyStartNanos);
+    LatencyHistograms.record(endpoint, LatencyHistograms.Metric.UPLOAD, requestSentNanos - requestBodyStartNanos);
+  }
+
+  @Override
+  public void responseHeadersStart(@NonNull Call call) {
+    final long now = System.nanoTime();
+    SessionMetrics.addNetworkTiming(sessionId, "ttfb", now - requestSentNanos);
+    LatencyHistograms.record(endpoint, LatencyHistograms.Metric.SERVER, now - requestSentNanos);
+    // The server answers a HEAD request right away, so its time to first byte
+    // is close to one round trip. Route probes are tagged and left out, so
+    // this is the preconnect HEAD of ConnectionWarmer.
+    if (isUntaggedHead) {
+      BandwidthEstimator.recordRtt(now - requestHeadersEndNanos);
+    }
+  }
+
+  @Override
+  public void callEnd(@NonNull Call call) {
+    // Failed calls are left out: a fast failure says nothing about latency.
+    LatencyHistograms.record(endpoint, LatencyHistograms.Metric.CALL, System.nanoTime() - callStartNanos);
+    if (isUpload) {
+      ConnectionWarmer.recordUpload(!openedConnection);
+    }
+  }
+
+  @Override
+  public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+    if (isUpload) {
+      ConnectionWarmer.recordUpload(!openedConnection);
+    }
+  }
+}
@@ -5,21 +5,18 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okio.BufferedSink;
-import okio.Okio;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -30,7 +27,14 @@ public class NetworkingHelpers {
 
   private static OkHttpClient createApiClient() {
     OkHttpClient client = new OkHttpClient.Builder()
-        .callTimeout(180, TimeUnit.SECONDS)
+        .addInterceptor(new HeadersInterceptor())
+        .addInterceptor(new CompressionInterceptor())
+        .addInterceptor(new RetryInterceptor())
+        .addInterceptor(new CircuitBreakerInterceptor())
+        .addInterceptor(new FailoverInterceptor())
+        .addInterceptor(new AdaptiveTimeoutInterceptor())
+        .eventListenerFactory(NetworkEventListener.FACTORY)
+        .callTimeout(BandwidthEstimator.getMaxTimeoutMillis(), TimeUnit.MILLISECONDS)
         .connectTimeout(180, TimeUnit.SECONDS)
         .readTimeout(180, TimeUnit.SECONDS)
         .writeTimeout(180, TimeUnit.SECONDS)
@@ -38,7 +42,7 @@ public class NetworkingHelpers {
 
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
       try {
-        client = new OkHttpClient.Builder()
+        client = client.newBuilder()
             .sslSocketFactory(new TLSSocketFactory())
             .build();
       } catch (KeyManagementException e) {
@@ -51,8 +55,6 @@ public class NetworkingHelpers {
     return client;
   }
 
-  public static String OK_HTTP_BUILDER_TAG = "APIRequest";
-
   public static synchronized OkHttpClient getApiClient() {
     if (_apiClient == null) {
       _apiClient = createApiClient();
@@ -60,30 +62,54 @@ public class NetworkingHelpers {
     return _apiClient;
   }
 
-  static public void cancelPendingRequests() {
-    OkHttpClient client = getApiClient();
-
-    for (Call call : client.dispatcher().queuedCalls()) {
-      if (Objects.equals(call.request().tag(), OK_HTTP_BUILDER_TAG))
-        call.cancel();
-    }
-
-    for (Call call : client.dispatcher().runningCalls()) {
-      if (Objects.equals(call.request().tag(), OK_HTTP_BUILDER_TAG))
-        call.cancel();
+  /**
+   * Sets the bounds, in seconds, of the timeouts derived for each request. The
+   * maximum also bounds the whole call, retries included.
+   */
+  public static synchronized void setTimeouts(Long minTimeoutSeconds, Long maxTimeoutSeconds) {
+    BandwidthEstimator.configure(minTimeoutSeconds, maxTimeoutSeconds);
+    if (_apiClient != null) {
+      _apiClient = _apiClient.newBuilder()
+          .callTimeout(BandwidthEstimator.getMaxTimeoutMillis(), TimeUnit.MILLISECONDS)
+          .build();
     }
   }
 }
 
 class ProgressRequestBody extends RequestBody {
   private final RequestBody requestBody;
-  private Listener listener;
+  private final Listener listener;
+  private final AtomicLong writeNanos = new AtomicLong();
 
   ProgressRequestBody(RequestBody requestBody, Listener listener) {
     this.requestBody = requestBody;
     this.listener = listener;
   }
 
+  /**
+   * Total time spent writing this body, over every attempt.
+   */
+  long getWriteNanos() {
+    return writeNanos.get();
+  }
+
+  /**
+   * This body compressed with {@code encoding}, reporting its progress in
+   * compressed bytes to the same listener.
+   */
+  ProgressRequestBody compressed(String encoding) {
+    return new ProgressRequestBody(new CompressedRequestBody(requestBody, encoding), listener);
+  }
+
+  /**
+   * The length of this body, or its expected length once compressed.
+   */
+  long estimatedLength() throws IOException {
+    return requestBody instanceof CompressedRequestBody
+        ? ((CompressedRequestBody) requestBody).estimatedLength()
+        : requestBody.contentLength();
+  }
+
   @Override
   public MediaType contentType() {
     return requestBody.contentType();
@@ -95,40 +121,17 @@ class ProgressRequestBody extends RequestBody {
   }
 
   @Override
-  public void writeTo(BufferedSink sink) throws IOException {
-    ProgressStream progressStream = new ProgressStream(sink.outputStream(), contentLength());
-    BufferedSink progressSink = Okio.buffer(Okio.sink(progressStream));
-    requestBody.writeTo(progressSink);
-    progressSink.flush();
-  }
-
-  protected final class ProgressStream extends OutputStream {
-    private final OutputStream stream;
-    private long totalBytes;
-    private long bytesSent;
-
-    ProgressStream(OutputStream stream, long totalBytes) {
-      this.stream = stream;
-      this.totalBytes = totalBytes;
-    }
-
-    @Override
-    public void write(@NonNull byte[] b, int off, int len) throws IOException {
-      this.stream.write(b, off, len);
-      if (len < b.length) {
-        this.bytesSent += len;
-      } else {
-        this.bytesSent += b.length;
-      }
-      listener.onUploadProgressChanged(this.bytesSent, this.totalBytes);
-    }
-
-    @Override
-    public void write(int b) throws IOException {
-      this.stream.write(b);
-      this.bytesSent += 1;
-      listener.onUploadProgressChanged(this.bytesSent, this.totalBytes);
-    }
+  public void writeTo(@NonNull BufferedSink sink) throws IOException {
+    final long startNanos = System.nanoTime();
+    final ProgressAggregator progress = new ProgressAggregator(estimatedLength(), listener);
+    final CountingSink countingSink = new CountingSink(sink, progress);
+    requestBody.writeTo(countingSink);
+    // Counts bytes the body put straight into the buffer after its last write.
+    countingSink.emitCompleteSegments();
+    progress.finish();
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    writeNanos.addAndGet(elapsedNanos);
+    BandwidthEstimator.recordUpload(progress.getBytesWritten(), elapsedNanos);
   }
 
   interface Listener {
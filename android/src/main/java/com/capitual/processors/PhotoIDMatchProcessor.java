@@ -7,32 +7,28 @@ import androidx.annotation.NonNull;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.RequestBody;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 import com.capitual.processors.helpers.ThemeUtils;
-import com.capitual.reactnativecapfacesdk.ReactNativeCapfaceSdkModule;
 import com.facebook.react.bridge.ReadableMap;
 import com.facetec.sdk.*;
 
-public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanProcessor, FaceTecIDScanProcessor {
+public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanProcessor, FaceTecIDScanProcessor,
+    FaceTecBridge.FaceScanProcessor, FaceTecBridge.IDScanProcessor {
   private final String principalKey = "photoIdMatchMessage";
   private final String latestExternalDatabaseRefID;
   private final ReadableMap data;
-  private final ReactNativeCapfaceSdkModule capFaceModule;
+  private final SessionHost capFaceModule;
+  private final String sessionId;
   private final ThemeUtils capThemeUtils = new ThemeUtils();
   private boolean success = false;
   private boolean faceScanWasSuccessful = false;
 
-  public PhotoIDMatchProcessor(String sessionToken, Context context, ReactNativeCapfaceSdkModule capFaceModule,
+  public PhotoIDMatchProcessor(String sessionToken, Context context, SessionHost capFaceModule,
       ReadableMap data) {
     this.capFaceModule = capFaceModule;
+    this.sessionId = capFaceModule.getLatestSessionId();
     this.latestExternalDatabaseRefID = this.capFaceModule.getLatestExternalDatabaseRefID();
     this.data = data;
 
@@ -108,44 +104,42 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
             "Processing\nID Details"));
 
     capFaceModule.sendEvent("onCloseModal", true);
-    FaceTecSessionActivity.createAndLaunchSession(context, PhotoIDMatchProcessor.this, PhotoIDMatchProcessor.this,
-        sessionToken);
+    FaceTecBridge.launch(context, PhotoIDMatchProcessor.this, sessionToken);
+    ConnectionWarmer.startKeepWarm();
   }
 
   public void processSessionWhileFaceTecSDKWaits(final FaceTecSessionResult sessionResult,
       final FaceTecFaceScanResultCallback faceScanResultCallback) {
     capFaceModule.setLatestSessionResult(sessionResult);
+    processFaceScan(FaceTecBridge.faceScan(sessionResult), FaceTecBridge.callback(faceScanResultCallback));
+  }
 
-    if (sessionResult.getStatus() != FaceTecSessionStatus.SESSION_COMPLETED_SUCCESSFULLY) {
-      NetworkingHelpers.cancelPendingRequests();
+  @Override
+  public void processFaceScan(final FaceTecBridge.FaceScan sessionResult,
+      final FaceTecBridge.ScanResultCallback faceScanResultCallback) {
+    SessionMetrics.lap(sessionId, "camera");
+    ConnectionWarmer.stopKeepWarm();
+
+    if (!sessionResult.isCompleted()) {
+      SessionCallRegistry.cancelSession(sessionId);
       faceScanResultCallback.cancel();
       capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("The session status has not been completed!", "CapFaceInvalidSession");
+      capFaceModule.rejectProcessorPromise("The session status has not been completed!", "CapFaceInvalidSession");
       return;
     }
 
-    JSONObject parameters = new JSONObject();
-    try {
-      if (this.data != null) {
-        parameters.put("data", new JSONObject(this.data.toHashMap()));
-      }
-      parameters.put("faceScan", sessionResult.getFaceScanBase64());
-      parameters.put("auditTrailImage", sessionResult.getAuditTrailCompressedBase64()[0]);
-      parameters.put("lowQualityAuditTrailImage", sessionResult.getLowQualityAuditTrailCompressedBase64()[0]);
-      parameters.put("externalDatabaseRefID", this.latestExternalDatabaseRefID);
-    } catch (JSONException e) {
-      e.printStackTrace();
-      Log.d("Capitual - JSON", "Exception raised while attempting to create JSON payload for upload.");
-      capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("Exception raised while attempting to create JSON payload for upload.",
-          "JSONError");
-    }
+    final DeferredArtifacts artifacts = new DeferredArtifacts(sessionId, this.latestExternalDatabaseRefID);
+    JsonStreamRequestBody parameters = new JsonStreamRequestBody()
+        .put("data", artifacts.keep("data", this.data != null ? this.data.toHashMap() : null))
+        .put("faceScan", sessionResult.getFaceScanBase64())
+        .put("auditTrailImage", artifacts.keep("auditTrailImage", sessionResult.getAuditTrailImage()))
+        .put("lowQualityAuditTrailImage",
+            artifacts.keep("lowQualityAuditTrailImage", sessionResult.getLowQualityAuditTrailImage()))
+        .put("externalDatabaseRefID", this.latestExternalDatabaseRefID)
+        .put("deferredFields", artifacts.getFields());
 
-    okhttp3.Request request = new okhttp3.Request.Builder()
-        .url(Config.BaseURL + "/enrollment-3d")
-        .headers(Config.getHeaders("POST"))
-        .post(new ProgressRequestBody(
-            RequestBody.create(MediaType.parse("application/json; charset=utf-8"), parameters.toString()),
+    okhttp3.Request request = ApiEndpoint.ENROLLMENT_3D.newRequest()
+        .post(new ProgressRequestBody(parameters,
             new ProgressRequestBody.Listener() {
               @Override
               public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
@@ -155,33 +149,38 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
             }))
         .build();
 
-    NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+    SessionMetrics.lap(sessionId, "payload");
+    SessionCallRegistry.enqueue(sessionId, request, new Callback() {
       @Override
       public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) throws IOException {
-        String responseString = response.body().string();
-        response.body().close();
         try {
-          JSONObject responseJSON = new JSONObject(responseString);
-          boolean wasProcessed = responseJSON.getBoolean("wasProcessed");
-          String scanResultBlob = responseJSON.getString("scanResultBlob");
+          ScanResponse scanResponse = ResponseDecoder.decodeScan(response.body());
+          boolean wasProcessed = scanResponse.wasProcessed;
+          String scanResultBlob = scanResponse.scanResultBlob;
+          SessionMetrics.lap(sessionId, "request");
 
           if (wasProcessed) {
+            artifacts.upload();
             FaceTecCustomization.overrideResultScreenSuccessMessage = capThemeUtils.handleMessage(
                 principalKey, "successMessage",
                 "Liveness\nConfirmed");
             faceScanWasSuccessful = faceScanResultCallback.proceedToNextStep(scanResultBlob);
+            SessionMetrics.lap(sessionId, "proceedToNextStep");
+            if (faceScanWasSuccessful) {
+              ConnectionWarmer.startKeepWarm();
+            }
           } else {
             faceScanResultCallback.cancel();
             capFaceModule.sendEvent("onCloseModal", false);
-            capFaceModule.processorPromise.reject("CapFace SDK wasn't have to liveness values processed!",
+            capFaceModule.rejectProcessorPromise("CapFace SDK wasn't have to liveness values processed!",
                 "CapFaceLivenessWasntProcessed");
           }
-        } catch (JSONException e) {
+        } catch (ResponseDecoder.DecodeException e) {
           e.printStackTrace();
           Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
           faceScanResultCallback.cancel();
           capFaceModule.sendEvent("onCloseModal", false);
-          capFaceModule.processorPromise.reject("Exception raised while attempting to parse JSON result.",
+          capFaceModule.rejectProcessorPromise("Exception raised while attempting to parse JSON result.",
               "JSONError");
         }
       }
@@ -191,7 +190,7 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
         Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
         faceScanResultCallback.cancel();
         capFaceModule.sendEvent("onCloseModal", false);
-        capFaceModule.processorPromise.reject("Exception raised while attempting HTTPS call.", "HTTPSError");
+        rejectFailedCall(capFaceModule, e);
       }
     });
   }
@@ -199,44 +198,38 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
   public void processIDScanWhileFaceTecSDKWaits(final FaceTecIDScanResult idScanResult,
       final FaceTecIDScanResultCallback idScanResultCallback) {
     capFaceModule.setLatestIDScanResult(idScanResult);
+    processIDScan(FaceTecBridge.idScan(idScanResult), FaceTecBridge.callback(idScanResultCallback));
+  }
+
+  @Override
+  public void processIDScan(final FaceTecBridge.IDScan idScanResult,
+      final FaceTecBridge.ScanResultCallback idScanResultCallback) {
+    SessionMetrics.lap(sessionId, "camera");
+    ConnectionWarmer.stopKeepWarm();
 
-    if (idScanResult.getStatus() != FaceTecIDScanStatus.SUCCESS) {
-      NetworkingHelpers.cancelPendingRequests();
+    if (!idScanResult.isCompleted()) {
+      SessionCallRegistry.cancelSession(sessionId);
       idScanResultCallback.cancel();
       capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("The scan status has not been completed!", "CapFaceInvalidSession");
+      capFaceModule.rejectProcessorPromise("The scan status has not been completed!", "CapFaceInvalidSession");
       return;
     }
 
     final int minMatchLevel = 3;
 
-    JSONObject parameters = new JSONObject();
-    try {
-      parameters.put("externalDatabaseRefID", this.latestExternalDatabaseRefID);
-      parameters.put("idScan", idScanResult.getIDScanBase64());
-      parameters.put("minMatchLevel", minMatchLevel);
-
-      ArrayList<String> frontImagesCompressedBase64 = idScanResult.getFrontImagesCompressedBase64();
-      ArrayList<String> backImagesCompressedBase64 = idScanResult.getBackImagesCompressedBase64();
-      if (frontImagesCompressedBase64.size() > 0) {
-        parameters.put("idScanFrontImage", frontImagesCompressedBase64.get(0));
-      }
-      if (backImagesCompressedBase64.size() > 0) {
-        parameters.put("idScanBackImage", backImagesCompressedBase64.get(0));
-      }
-    } catch (JSONException e) {
-      e.printStackTrace();
-      Log.d("Capitual - JSON", "Exception raised while attempting to create JSON payload for upload.");
-      capFaceModule.sendEvent("onCloseModal", false);
-      capFaceModule.processorPromise.reject("Exception raised while attempting to parse JSON result.",
-          "JSONError");
-    }
+    final DeferredArtifacts artifacts = new DeferredArtifacts(sessionId, this.latestExternalDatabaseRefID);
+    JsonStreamRequestBody parameters = new JsonStreamRequestBody()
+        .put("externalDatabaseRefID", this.latestExternalDatabaseRefID)
+        .put("idScan", idScanResult.getIDScanBase64())
+        .put("minMatchLevel", minMatchLevel)
+        .putFirst("idScanFrontImage",
+            artifacts.keepFirst("idScanFrontImage", idScanResult.getFrontImagesCompressedBase64()))
+        .putFirst("idScanBackImage",
+            artifacts.keepFirst("idScanBackImage", idScanResult.getBackImagesCompressedBase64()))
+        .put("deferredFields", artifacts.getFields());
 
-    okhttp3.Request request = new okhttp3.Request.Builder()
-        .url(Config.BaseURL + "/match-3d-2d-idscan")
-        .headers(Config.getHeaders("POST"))
-        .post(new ProgressRequestBody(
-            RequestBody.create(MediaType.parse("application/json; charset=utf-8"), parameters.toString()),
+    okhttp3.Request request = ApiEndpoint.MATCH_3D_2D_IDSCAN.newRequest()
+        .post(new ProgressRequestBody(parameters,
             new ProgressRequestBody.Listener() {
               @Override
               public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
@@ -246,17 +239,18 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
             }))
         .build();
 
-    NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+    SessionMetrics.lap(sessionId, "payload");
+    SessionCallRegistry.enqueue(sessionId, request, new Callback() {
       @Override
       public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) throws IOException {
-        String responseString = response.body().string();
-        response.body().close();
         try {
-          JSONObject responseJSON = new JSONObject(responseString);
-          boolean wasProcessed = responseJSON.getBoolean("wasProcessed");
-          String scanResultBlob = responseJSON.getString("scanResultBlob");
+          ScanResponse scanResponse = ResponseDecoder.decodeScan(response.body());
+          boolean wasProcessed = scanResponse.wasProcessed;
+          String scanResultBlob = scanResponse.scanResultBlob;
+          SessionMetrics.lap(sessionId, "request");
 
           if (wasProcessed) {
+            artifacts.upload();
             FaceTecCustomization.setIDScanResultScreenMessageOverrides(
                 // Successful scan of ID front-side (ID Types with no back-side).
                 capThemeUtils.handleMessage(principalKey, "successFrontSide",
@@ -308,22 +302,23 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
                     "ID Details\nUploaded"));
 
             success = idScanResultCallback.proceedToNextStep(scanResultBlob);
+            SessionMetrics.lap(sessionId, "proceedToNextStep");
             if (success) {
               capFaceModule.sendEvent("onCloseModal", false);
-              capFaceModule.processorPromise.resolve(true);
+              capFaceModule.resolveProcessorPromise(sessionId, ApiEndpoint.MATCH_3D_2D_IDSCAN);
             }
           } else {
             idScanResultCallback.cancel();
             capFaceModule.sendEvent("onCloseModal", false);
-            capFaceModule.processorPromise.reject("CapFace SDK wasn't have to scan values processed!",
+            capFaceModule.rejectProcessorPromise("CapFace SDK wasn't have to scan values processed!",
                 "CapFaceScanWasntProcessed");
           }
-        } catch (JSONException e) {
+        } catch (ResponseDecoder.DecodeException e) {
           e.printStackTrace();
           Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
           idScanResultCallback.cancel();
           capFaceModule.sendEvent("onCloseModal", false);
-          capFaceModule.processorPromise.reject("Exception raised while attempting to parse JSON result.",
+          capFaceModule.rejectProcessorPromise("Exception raised while attempting to parse JSON result.",
               "JSONError");
         }
       }
@@ -333,7 +328,7 @@ public class PhotoIDMatchProcessor extends Processor implements FaceTecFaceScanP
         Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
         idScanResultCallback.cancel();
         capFaceModule.sendEvent("onCloseModal", false);
-        capFaceModule.processorPromise.reject("Exception raised while attempting HTTPS call.", "HTTPSError");
+        rejectFailedCall(capFaceModule, e);
       }
     });
   }
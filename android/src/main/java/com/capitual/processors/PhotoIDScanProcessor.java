@@ -5,38 +5,32 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import com.capitual.reactnativecapfacesdk.ReactNativeCapfaceSdkModule;
 import com.facebook.react.bridge.ReadableMap;
 import com.facetec.sdk.FaceTecCustomization;
 import com.facetec.sdk.FaceTecIDScanProcessor;
 import com.facetec.sdk.FaceTecIDScanResult;
 import com.facetec.sdk.FaceTecIDScanResultCallback;
-import com.facetec.sdk.FaceTecIDScanStatus;
-import com.facetec.sdk.FaceTecSessionActivity;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.RequestBody;
 
 import com.capitual.processors.helpers.ThemeUtils;
 
-public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProcessor {
+public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProcessor,
+		FaceTecBridge.IDScanProcessor {
 	private boolean success = false;
 	private final String principalKey = "photoIdScanMessage";
 	private final ReadableMap data;
-	private final ReactNativeCapfaceSdkModule capFaceModule;
+	private final SessionHost capFaceModule;
+	private final String sessionId;
 	private final ThemeUtils capThemeUtils = new ThemeUtils();
 
-	public PhotoIDScanProcessor(String sessionToken, Context context, ReactNativeCapfaceSdkModule capFaceModule,
+	public PhotoIDScanProcessor(String sessionToken, Context context, SessionHost capFaceModule,
 			ReadableMap data) {
 		this.capFaceModule = capFaceModule;
+		this.sessionId = capFaceModule.getLatestSessionId();
 		this.data = data;
 
 		FaceTecCustomization.setIDScanUploadMessageOverrides(
@@ -111,49 +105,42 @@ public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProc
 						"Processing\nID Details"));
 
 		capFaceModule.sendEvent("onCloseModal", true);
-		FaceTecSessionActivity.createAndLaunchSession(context, PhotoIDScanProcessor.this, sessionToken);
+		FaceTecBridge.launch(context, PhotoIDScanProcessor.this, sessionToken);
+		ConnectionWarmer.startKeepWarm();
 	}
 
 	public void processIDScanWhileFaceTecSDKWaits(final FaceTecIDScanResult idScanResult,
 			final FaceTecIDScanResultCallback idScanResultCallback) {
 		capFaceModule.setLatestIDScanResult(idScanResult);
+		processIDScan(FaceTecBridge.idScan(idScanResult), FaceTecBridge.callback(idScanResultCallback));
+	}
+
+	@Override
+	public void processIDScan(final FaceTecBridge.IDScan idScanResult,
+			final FaceTecBridge.ScanResultCallback idScanResultCallback) {
+		SessionMetrics.lap(sessionId, "camera");
+		ConnectionWarmer.stopKeepWarm();
 
-		if (idScanResult.getStatus() != FaceTecIDScanStatus.SUCCESS) {
-			NetworkingHelpers.cancelPendingRequests();
+		if (!idScanResult.isCompleted()) {
+			SessionCallRegistry.cancelSession(sessionId);
 			idScanResultCallback.cancel();
 			capFaceModule.sendEvent("onCloseModal", false);
-			capFaceModule.processorPromise.reject("The scan status has not been completed!", "CapFaceInvalidSession");
+			capFaceModule.rejectProcessorPromise("The scan status has not been completed!", "CapFaceInvalidSession");
 			return;
 		}
 
-		JSONObject parameters = new JSONObject();
-		try {
-			if (this.data != null) {
-				parameters.put("data", new JSONObject(this.data.toHashMap()));
-			}
-			parameters.put("idScan", idScanResult.getIDScanBase64());
-
-			ArrayList<String> frontImagesCompressedBase64 = idScanResult.getFrontImagesCompressedBase64();
-			ArrayList<String> backImagesCompressedBase64 = idScanResult.getBackImagesCompressedBase64();
-			if (frontImagesCompressedBase64.size() > 0) {
-				parameters.put("idScanFrontImage", frontImagesCompressedBase64.get(0));
-			}
-			if (backImagesCompressedBase64.size() > 0) {
-				parameters.put("idScanBackImage", backImagesCompressedBase64.get(0));
-			}
-		} catch (JSONException e) {
-			e.printStackTrace();
-			Log.d("Capitual - JSON", "Exception raised while attempting to create JSON payload for upload.");
-			capFaceModule.sendEvent("onCloseModal", false);
-			capFaceModule.processorPromise.reject("Exception raised while attempting to create JSON payload for upload.",
-					"JSONError");
-		}
-
-		okhttp3.Request request = new okhttp3.Request.Builder()
-				.url(Config.BaseURL + "/idscan-only")
-				.headers(Config.getHeaders("POST"))
-				.post(new ProgressRequestBody(
-						RequestBody.create(MediaType.parse("application/json; charset=utf-8"), parameters.toString()),
+		final DeferredArtifacts artifacts = new DeferredArtifacts(sessionId, null);
+		JsonStreamRequestBody parameters = new JsonStreamRequestBody()
+				.put("data", artifacts.keep("data", this.data != null ? this.data.toHashMap() : null))
+				.put("idScan", idScanResult.getIDScanBase64())
+				.putFirst("idScanFrontImage",
+						artifacts.keepFirst("idScanFrontImage", idScanResult.getFrontImagesCompressedBase64()))
+				.putFirst("idScanBackImage",
+						artifacts.keepFirst("idScanBackImage", idScanResult.getBackImagesCompressedBase64()))
+				.put("deferredFields", artifacts.getFields());
+
+		okhttp3.Request request = ApiEndpoint.IDSCAN_ONLY.newRequest()
+				.post(new ProgressRequestBody(parameters,
 						new ProgressRequestBody.Listener() {
 							@Override
 							public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
@@ -163,17 +150,18 @@ public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProc
 						}))
 				.build();
 
-		NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+		SessionMetrics.lap(sessionId, "payload");
+		SessionCallRegistry.enqueue(sessionId, request, new Callback() {
 			@Override
 			public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) throws IOException {
-				String responseString = response.body().string();
-				response.body().close();
 				try {
-					JSONObject responseJSON = new JSONObject(responseString);
-					boolean wasProcessed = responseJSON.getBoolean("wasProcessed");
-					String scanResultBlob = responseJSON.getString("scanResultBlob");
+					ScanResponse scanResponse = ResponseDecoder.decodeScan(response.body());
+					boolean wasProcessed = scanResponse.wasProcessed;
+					String scanResultBlob = scanResponse.scanResultBlob;
+					SessionMetrics.lap(sessionId, "request");
 
 					if (wasProcessed) {
+						artifacts.upload();
 						FaceTecCustomization.setIDScanResultScreenMessageOverrides(
 								// Successful scan of ID front-side (ID Types with no back-side).
 								capThemeUtils.handleMessage(principalKey, "successFrontSide",
@@ -225,22 +213,23 @@ public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProc
 										"ID Details\nUploaded"));
 
 						success = idScanResultCallback.proceedToNextStep(scanResultBlob);
+						SessionMetrics.lap(sessionId, "proceedToNextStep");
 						if (success) {
 							capFaceModule.sendEvent("onCloseModal", false);
-							capFaceModule.processorPromise.resolve(true);
+							capFaceModule.resolveProcessorPromise(sessionId, ApiEndpoint.IDSCAN_ONLY);
 						}
 					} else {
 						idScanResultCallback.cancel();
 						capFaceModule.sendEvent("onCloseModal", false);
-						capFaceModule.processorPromise.reject("CapFace SDK values were not processed!",
+						capFaceModule.rejectProcessorPromise("CapFace SDK values were not processed!",
 								"CapFaceValuesWereNotProcessed");
 					}
-				} catch (JSONException e) {
+				} catch (ResponseDecoder.DecodeException e) {
 					e.printStackTrace();
 					Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
 					idScanResultCallback.cancel();
 					capFaceModule.sendEvent("onCloseModal", false);
-					capFaceModule.processorPromise.reject("Exception raised while attempting to parse JSON result.",
+					capFaceModule.rejectProcessorPromise("Exception raised while attempting to parse JSON result.",
 							"JSONError");
 				}
 			}
@@ -250,7 +239,7 @@ public class PhotoIDScanProcessor extends Processor implements FaceTecIDScanProc
 				Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
 				idScanResultCallback.cancel();
 				capFaceModule.sendEvent("onCloseModal", false);
-				capFaceModule.processorPromise.reject("Exception raised while attempting HTTPS call.", "HTTPSError");
+				rejectFailedCall(capFaceModule, e);
 			}
 		});
 	}
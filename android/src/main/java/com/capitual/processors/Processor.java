@@ -1,5 +1,19 @@
 package com.capitual.processors;
 
+import java.io.IOException;
+
 public abstract class Processor {
   public abstract boolean isSuccess();
+
+  /**
+   * Rejects the session after its request failed, telling an open circuit
+   * breaker apart from the other network errors.
+   */
+  static void rejectFailedCall(SessionHost capFaceModule, IOException e) {
+    if (e instanceof CircuitBreaker.OpenException) {
+      capFaceModule.rejectProcessorPromise("CapFace backend is unavailable, try again later!", "CapFaceCircuitOpen");
+    } else {
+      capFaceModule.rejectProcessorPromise("Exception raised while attempting HTTPS call.", "HTTPSError");
+    }
+  }
 }
@@ -0,0 +1,70 @@
+package com.capitual.processors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces upload byte counts into progress updates. An update goes out at
+ * most {@code maxUpdatesPerSecond} times per second and only once the upload
+ * moved by at least {@code minFractionDelta} of its length since the last one.
+ *
+ * <p>The length may be an estimate, as for a body compressed on the wire. An
+ * update never reports a total below the bytes written so far, and
+ * {@link #finish()} always delivers a last update with the real total.
+ */
+class ProgressAggregator {
+  static final int DEFAULT_MAX_UPDATES_PER_SECOND = 10;
+  static final float DEFAULT_MIN_FRACTION_DELTA = 0.01f;
+
+  private final ProgressRequestBody.Listener listener;
+  private final long totalBytes;
+  private final long minIntervalNanos;
+  private final long minDeltaBytes;
+  private long bytesWritten = 0;
+  private long lastEmittedBytes = 0;
+  private long lastEmittedTotal = 0;
+  private long lastEmitNanos;
+
+  ProgressAggregator(long totalBytes, ProgressRequestBody.Listener listener) {
+    this(totalBytes, listener, DEFAULT_MAX_UPDATES_PER_SECOND, DEFAULT_MIN_FRACTION_DELTA);
+  }
+
+  ProgressAggregator(long totalBytes, ProgressRequestBody.Listener listener, int maxUpdatesPerSecond,
+      float minFractionDelta) {
+    this.listener = listener;
+    this.totalBytes = totalBytes;
+    this.minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxUpdatesPerSecond);
+    this.minDeltaBytes = totalBytes > 0 ? (long) (totalBytes * minFractionDelta) : 0;
+    this.lastEmitNanos = System.nanoTime() - minIntervalNanos;
+  }
+
+  void onBytesWritten(long byteCount) {
+    bytesWritten += byteCount;
+
+    final long now = System.nanoTime();
+    if (now - lastEmitNanos < minIntervalNanos || bytesWritten - lastEmittedBytes < minDeltaBytes) {
+      return;
+    }
+
+    lastEmitNanos = now;
+    emit(Math.max(totalBytes, bytesWritten));
+  }
+
+  /**
+   * Delivers the update for the last byte, once the whole body is written.
+   */
+  void finish() {
+    if (bytesWritten != lastEmittedBytes || bytesWritten != lastEmittedTotal) {
+      emit(bytesWritten);
+    }
+  }
+
+  private void emit(long reportedTotalBytes) {
+    lastEmittedBytes = bytesWritten;
+    lastEmittedTotal = reportedTotalBytes;
+    listener.onUploadProgressChanged(bytesWritten, reportedTotalBytes);
+  }
+
+  long getBytesWritten() {
+    return bytesWritten;
+  }
+}
@@ -0,0 +1,165 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Decodes API responses straight from the response stream. Only the fields of
+ * the typed models are materialized; everything else is skipped without
+ * building strings or a JSON tree, and responses larger than
+ * {@link #MAX_RESPONSE_BYTES} are refused.
+ */
+final class ResponseDecoder {
+  static final long MAX_RESPONSE_BYTES = 4 * 1024 * 1024;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Raised when a response is not the JSON object expected, is missing a
+   * required field or is too large.
+   */
+  static final class DecodeException extends IOException {
+    DecodeException(String message) {
+      super(message);
+    }
+
+    DecodeException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  private interface FieldReader {
+    void read(String name, JsonReader reader) throws IOException;
+  }
+
+  static ScanResponse decodeScan(@NonNull ResponseBody body) throws DecodeException {
+    final boolean[] wasProcessed = new boolean[1];
+    final boolean[] hasWasProcessed = new boolean[1];
+    final String[] scanResultBlob = new String[1];
+
+    decodeObject(body, new FieldReader() {
+      @Override
+      public void read(String name, JsonReader reader) throws IOException {
+        if ("wasProcessed".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+          wasProcessed[0] = reader.nextBoolean();
+          hasWasProcessed[0] = true;
+        } else if ("scanResultBlob".equals(name)) {
+          scanResultBlob[0] = nextString(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+    });
+
+    if (!hasWasProcessed[0]) {
+      throw new DecodeException("Response JSON is missing wasProcessed.");
+    }
+    if (scanResultBlob[0] == null) {
+      throw new DecodeException("Response JSON is missing scanResultBlob.");
+    }
+    return new ScanResponse(wasProcessed[0], scanResultBlob[0]);
+  }
+
+  static SessionTokenResponse decodeSessionToken(@NonNull ResponseBody body) throws DecodeException {
+    final String[] fields = new String[2];
+
+    decodeObject(body, new FieldReader() {
+      @Override
+      public void read(String name, JsonReader reader) throws IOException {
+        if ("sessionToken".equals(name)) {
+          fields[0] = nextString(reader);
+        } else if ("errorMessage".equals(name)) {
+          fields[1] = nextString(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+    });
+
+    return new SessionTokenResponse(fields[0], fields[1]);
+  }
+
+  /**
+   * Reads the value as a string the way {@code JSONObject.getString} would,
+   * returning {@code null} for JSON null and skipping objects and arrays.
+   */
+  @Nullable
+  private static String nextString(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        return reader.nextString();
+      case BOOLEAN:
+        return Boolean.toString(reader.nextBoolean());
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private static void decodeObject(ResponseBody body, FieldReader fieldReader) throws DecodeException {
+    if (body.contentLength() > MAX_RESPONSE_BYTES) {
+      body.close();
+      throw new DecodeException("Response is larger than " + MAX_RESPONSE_BYTES + " bytes.");
+    }
+
+    final JsonReader reader = new JsonReader(new InputStreamReader(
+        Okio.buffer(new LimitedSource(body)).inputStream(), UTF_8));
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        fieldReader.read(reader.nextName(), reader);
+      }
+      reader.endObject();
+    } catch (DecodeException e) {
+      throw e;
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
+      throw new DecodeException("Exception raised while attempting to parse JSON result.", e);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException ignored) {
+        // The body is being discarded.
+      }
+    }
+  }
+
+  /**
+   * Source over the response body that fails once more than
+   * {@link #MAX_RESPONSE_BYTES} were read, for bodies without a declared
+   * length.
+   */
+  private static final class LimitedSource extends ForwardingSource {
+    private long bytesRead = 0;
+
+    LimitedSource(ResponseBody body) {
+      super(body.source());
+    }
+
+    @Override
+    public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+      final long read = super.read(sink, byteCount);
+      if (read != -1) {
+        bytesRead += read;
+        if (bytesRead > MAX_RESPONSE_BYTES) {
+          throw new DecodeException("Response is larger than " + MAX_RESPONSE_BYTES + " bytes.");
+        }
+      }
+      return read;
+    }
+  }
+}
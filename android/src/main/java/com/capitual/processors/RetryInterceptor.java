@@ -0,0 +1,125 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Retries requests to the {@link ApiEndpoint}s after network failures and
+ * transient server errors, with exponential backoff and full jitter.
+ *
+ * <p>A {@code Retry-After} header on a 429 or 503 answer takes the place of
+ * the computed backoff. Every non-GET request gets an {@code Idempotency-Key}
+ * that stays the same across its attempts, so the backend can tell a retried
+ * upload from a new one. Retries stop when the endpoint runs out of attempts
+ * or when the next wait would go over its retry delay budget. Each attempt
+ * goes through {@link FailoverInterceptor}, so switching base URLs spends the
+ * same budget. A call canceled while it waits stops waiting right away, and
+ * an open {@link CircuitBreaker} ends the retries.
+ */
+class RetryInterceptor implements Interceptor {
+  private static final long BASE_DELAY_MILLIS = 500;
+  private static final long MAX_DELAY_MILLIS = 8000;
+  private static final long CANCEL_CHECK_MILLIS = 100;
+
+  private final Random random = new Random();
+
+  @NonNull
+  @Override
+  public Response intercept(@NonNull Chain chain) throws IOException {
+    Request request = chain.request();
+    final ApiEndpoint endpoint = request.tag(ApiEndpoint.class);
+    if (endpoint == null) {
+      return chain.proceed(request);
+    }
+
+    if (!"GET".equals(request.method()) && request.header("Idempotency-Key") == null) {
+      request = request.newBuilder()
+          .header("Idempotency-Key", UUID.randomUUID().toString())
+          .build();
+    }
+
+    long waitedMillis = 0;
+    for (int attempt = 1;; attempt++) {
+      Response response = null;
+      IOException failure = null;
+      try {
+        response = chain.proceed(request);
+      } catch (CircuitBreaker.OpenException e) {
+        throw e;
+      } catch (IOException e) {
+        failure = e;
+      }
+
+      final boolean shouldRetry = !chain.call().isCanceled()
+          && attempt < endpoint.maxAttempts
+          && (failure != null || isRetryable(response.code()));
+      final long delayMillis = shouldRetry ? delayMillis(attempt, response) : 0;
+
+      if (!shouldRetry || waitedMillis + delayMillis > endpoint.maxRetryDelayMillis) {
+        if (failure != null) {
+          throw failure;
+        }
+        return response;
+      }
+
+      if (response != null) {
+        response.close();
+      }
+      Log.d("Capitual - HTTPS", "Retrying " + endpoint.path + " in " + delayMillis + "ms, attempt " + (attempt + 1)
+          + " of " + endpoint.maxAttempts + ".");
+      sleep(chain, delayMillis);
+      waitedMillis += delayMillis;
+    }
+  }
+
+  private static boolean isRetryable(int code) {
+    return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+  }
+
+  private long delayMillis(int attempt, Response response) {
+    if (response != null && (response.code() == 429 || response.code() == 503)) {
+      final String retryAfter = response.header("Retry-After");
+      if (retryAfter != null) {
+        try {
+          return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException ignored) {
+          // An HTTP date; fall back to the computed backoff.
+        }
+      }
+    }
+    final long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << (attempt - 1));
+    synchronized (random) {
+      return (long) (random.nextDouble() * ceiling);
+    }
+  }
+
+  private static void sleep(Chain chain, long millis) throws IOException {
+    final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    try {
+      for (long remainingNanos = deadlineNanos - System.nanoTime(); remainingNanos > 0;
+          remainingNanos = deadlineNanos - System.nanoTime()) {
+        if (chain.call().isCanceled()) {
+          throw new IOException("Canceled");
+        }
+        Thread.sleep(Math.min(CANCEL_CHECK_MILLIS, TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry.");
+    }
+    if (chain.call().isCanceled()) {
+      throw new IOException("Canceled");
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.capitual.processors;
+
+/**
+ * The fields of a scan response the processors use: whether the backend
+ * processed the scan and the blob handed back to the FaceTec SDK.
+ */
+final class ScanResponse {
+  final boolean wasProcessed;
+  final String scanResultBlob;
+
+  ScanResponse(boolean wasProcessed, String scanResultBlob) {
+    this.wasProcessed = wasProcessed;
+    this.scanResultBlob = scanResultBlob;
+  }
+}
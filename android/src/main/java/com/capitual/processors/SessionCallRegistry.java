@@ -0,0 +1,153 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps the calls of each CapFace session, so a session can be cancelled
+ * without going through every call of the client's dispatcher.
+ */
+public class SessionCallRegistry {
+  /**
+   * Sent with every session request, so the backend can match the artifacts
+   * uploaded later by {@link DeferredUploadQueue} to the scan they belong to.
+   */
+  static final String SESSION_ID_HEADER = "X-Session-Id";
+  private static final int MAX_CANCELLED_SESSIONS = 32;
+
+  private static final HashMap<String, Set<Call>> callsBySession = new HashMap<>();
+  private static final Map<String, Boolean> cancelledSessions = new LinkedHashMap<String, Boolean>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_CANCELLED_SESSIONS;
+    }
+  };
+
+  /**
+   * Tag carried by every request made on behalf of a session.
+   */
+  public static final class SessionTag {
+    public final String sessionId;
+
+    SessionTag(String sessionId) {
+      this.sessionId = sessionId;
+    }
+  }
+
+  public static Call newCall(@NonNull String sessionId, @NonNull Request request) {
+    final Request sessionRequest = request.newBuilder()
+        .header(SESSION_ID_HEADER, sessionId)
+        .tag(SessionTag.class, new SessionTag(sessionId))
+        .build();
+    return NetworkingHelpers.getApiClient().newCall(sessionRequest);
+  }
+
+  /**
+   * Enqueues {@code request} as part of the session. The call leaves the
+   * registry once its callback runs.
+   */
+  public static void enqueue(@NonNull final String sessionId, @NonNull Request request,
+      @NonNull final Callback callback) {
+    final Call call = newCall(sessionId, request);
+    register(sessionId, call);
+
+    call.enqueue(new Callback() {
+      @Override
+      public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        unregister(sessionId, call);
+        callback.onFailure(call, e);
+      }
+
+      @Override
+      public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+        unregister(sessionId, call);
+        callback.onResponse(call, response);
+      }
+    });
+  }
+
+  private static void register(String sessionId, Call call) {
+    boolean isCancelled;
+    synchronized (SessionCallRegistry.class) {
+      isCancelled = cancelledSessions.containsKey(sessionId);
+      if (!isCancelled) {
+        Set<Call> calls = callsBySession.get(sessionId);
+        if (calls == null) {
+          calls = new HashSet<>();
+          callsBySession.put(sessionId, calls);
+        }
+        calls.add(call);
+      }
+    }
+    if (isCancelled) {
+      call.cancel();
+    } else {
+      DeferredUploadQueue.onSessionCallStarted();
+    }
+  }
+
+  private static void unregister(String sessionId, Call call) {
+    boolean isDone = false;
+    synchronized (SessionCallRegistry.class) {
+      final Set<Call> calls = callsBySession.get(sessionId);
+      if (calls != null && calls.remove(call) && calls.isEmpty()) {
+        callsBySession.remove(sessionId);
+        isDone = callsBySession.isEmpty();
+      }
+    }
+    if (isDone) {
+      DeferredUploadQueue.onSessionCallsDone();
+    }
+  }
+
+  /**
+   * Whether any session has a request in flight.
+   */
+  static synchronized boolean hasCallsInFlight() {
+    return !callsBySession.isEmpty();
+  }
+
+  /**
+   * Cancels every pending call of the session. Calls registered afterwards are
+   * cancelled right away.
+   *
+   * @return whether the session had calls in flight.
+   */
+  public static boolean cancelSession(String sessionId) {
+    if (sessionId == null) {
+      return false;
+    }
+    final Set<Call> calls;
+    final boolean isDone;
+    synchronized (SessionCallRegistry.class) {
+      cancelledSessions.put(sessionId, true);
+      calls = callsBySession.remove(sessionId);
+      isDone = callsBySession.isEmpty();
+    }
+    if (calls == null) {
+      return false;
+    }
+    if (isDone) {
+      DeferredUploadQueue.onSessionCallsDone();
+    }
+    for (Call call : calls) {
+      call.cancel();
+    }
+    return true;
+  }
+
+  public static synchronized boolean isCancelled(String sessionId) {
+    return cancelledSessions.containsKey(sessionId);
+  }
+}
@@ -0,0 +1,28 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facetec.sdk.FaceTecIDScanResult;
+import com.facetec.sdk.FaceTecSessionResult;
+
+/**
+ * What the processors need from the React Native module: the session they
+ * belong to, the JS events and the session's promise. The module implements
+ * it; load tests implement it without React Native.
+ */
+public interface SessionHost {
+  String getLatestSessionId();
+
+  String getLatestExternalDatabaseRefID();
+
+  void sendEvent(@NonNull String eventName, @Nullable Boolean eventValue);
+
+  void resolveProcessorPromise(String sessionId, ApiEndpoint endpoint);
+
+  void rejectProcessorPromise(String message, String code);
+
+  void setLatestSessionResult(FaceTecSessionResult sessionResult);
+
+  void setLatestIDScanResult(FaceTecIDScanResult idScanResult);
+}
@@ -0,0 +1,136 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monotonic timings of a session, from the {@code handle*} call to the
+ * promise result.
+ *
+ * <p>Phases are laps: each one lasts from the end of the previous phase to
+ * the call that names it, and phases that happen more than once in a session,
+ * like the face and ID rounds of a photo ID match, add up. Network timings come
+ * from the API client's event listener and add up over every call and attempt
+ * of the session. A session ends with an outcome: {@link #RESOLVED}, or the
+ * code its promise was rejected with. The last {@link #MAX_SESSIONS} sessions
+ * are kept.
+ */
+public class SessionMetrics {
+  public static final String RESOLVED = "resolved";
+
+  private static final int MAX_SESSIONS = 16;
+
+  private static final Map<String, SessionMetrics> sessions = new LinkedHashMap<String, SessionMetrics>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, SessionMetrics> eldest) {
+      return size() > MAX_SESSIONS;
+    }
+  };
+  private static boolean isReturnedWithResult = false;
+
+  private final long startNanos = System.nanoTime();
+  private long lapNanos = startNanos;
+  private long endNanos = 0;
+  @Nullable
+  private String outcome;
+  private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+  private final LinkedHashMap<String, Long> network = new LinkedHashMap<>();
+
+  /**
+   * Sets whether the session promises resolve with the session's metrics
+   * instead of {@code true}.
+   */
+  public static synchronized void configure(boolean returnWithResult) {
+    isReturnedWithResult = returnWithResult;
+  }
+
+  public static synchronized boolean isReturnedWithResult() {
+    return isReturnedWithResult;
+  }
+
+  public static synchronized void start(@NonNull String sessionId) {
+    sessions.put(sessionId, new SessionMetrics());
+  }
+
+  /**
+   * Ends the phase named {@code phase} now.
+   */
+  public static synchronized void lap(@Nullable String sessionId, @NonNull String phase) {
+    final SessionMetrics metrics = sessionId == null ? null : sessions.get(sessionId);
+    if (metrics == null || metrics.endNanos != 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    add(metrics.phases, phase, now - metrics.lapNanos);
+    metrics.lapNanos = now;
+  }
+
+  static synchronized void addNetworkTiming(@Nullable String sessionId, @NonNull String timing, long nanos) {
+    final SessionMetrics metrics = sessionId == null ? null : sessions.get(sessionId);
+    if (metrics != null && nanos >= 0) {
+      add(metrics.network, timing, nanos);
+    }
+  }
+
+  /**
+   * Ends the session with {@code outcome} and returns its duration in
+   * nanoseconds, or -1 when the session is unknown or already finished. The
+   * first outcome stays, so a request failing after the session was
+   * cancelled does not replace it.
+   */
+  public static synchronized long finish(@Nullable String sessionId, @NonNull String outcome) {
+    final SessionMetrics metrics = sessionId == null ? null : sessions.get(sessionId);
+    if (metrics == null || metrics.endNanos != 0) {
+      return -1;
+    }
+    metrics.endNanos = System.nanoTime();
+    metrics.outcome = outcome;
+    return metrics.endNanos - metrics.startNanos;
+  }
+
+  private static void add(Map<String, Long> timings, String name, long nanos) {
+    final Long previous = timings.get(name);
+    timings.put(name, previous == null ? nanos : previous + nanos);
+  }
+
+  /**
+   * The session's timings in milliseconds, or {@code null} for an unknown
+   * session. A session still running reports its duration so far.
+   */
+  @Nullable
+  public static synchronized WritableMap toWritableMap(@Nullable String sessionId) {
+    final SessionMetrics metrics = sessionId == null ? null : sessions.get(sessionId);
+    if (metrics == null) {
+      return null;
+    }
+    final long end = metrics.endNanos != 0 ? metrics.endNanos : System.nanoTime();
+
+    WritableMap map = Arguments.createMap();
+    map.putString("sessionId", sessionId);
+    map.putBoolean("isFinished", metrics.endNanos != 0);
+    map.putString("outcome", metrics.outcome);
+    map.putDouble("totalMs", toMillis(end - metrics.startNanos));
+    map.putMap("phases", toWritableMap(metrics.phases));
+    map.putMap("network", toWritableMap(metrics.network));
+    return map;
+  }
+
+  private static WritableMap toWritableMap(Map<String, Long> timings) {
+    WritableMap map = Arguments.createMap();
+    for (Map.Entry<String, Long> timing : timings.entrySet()) {
+      map.putDouble(timing.getKey(), toMillis(timing.getValue()));
+    }
+    return map;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
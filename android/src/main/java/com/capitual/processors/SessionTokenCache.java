@@ -0,0 +1,261 @@
+package com.capitual.processors;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * Keeps session tokens fetched ahead of time, so starting a session does not
+ * wait for the {@code /session-token} round trip.
+ *
+ * <p>Pooled tokens are handed out once and expire after the configured TTL.
+ * Expiring tokens are replaced in the background, but only for
+ * {@link #ACTIVE_MILLIS} after the SDK was initialized or a session asked for
+ * a token; an idle pool is left to run dry instead of fetching forever. At
+ * most one token request is in flight at a time. Tokens are single use, so
+ * callers that find the pool empty queue up and each gets a token fetched
+ * for it, in the order they arrived. Token requests can be hedged, see
+ * {@link #configureHedging(Boolean, Long)}.
+ */
+public class SessionTokenCache {
+  public interface Callback {
+    void onSessionToken(String sessionToken);
+
+    void onError(String message, String code);
+  }
+
+  private static final class Entry {
+    final String sessionToken;
+    final long refreshAtMillis;
+    final long expiresAtMillis;
+
+    Entry(String sessionToken, long fetchedAtMillis, long ttlMillis) {
+      this.sessionToken = sessionToken;
+      this.refreshAtMillis = fetchedAtMillis + ttlMillis * 4 / 5;
+      this.expiresAtMillis = fetchedAtMillis + ttlMillis;
+    }
+  }
+
+  static final long ACTIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final ScheduledExecutorService scheduler = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+          Thread thread = new Thread(runnable, "CapFace session tokens");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  private static final ArrayDeque<Entry> tokens = new ArrayDeque<>();
+  private static final ArrayDeque<Callback> waiters = new ArrayDeque<>();
+  private static int poolSize = 1;
+  private static long ttlMillis = TimeUnit.MINUTES.toMillis(2);
+  private static boolean isFetching = false;
+  private static long lastUsedMillis = Long.MIN_VALUE;
+  private static int generation = 0;
+  private static final HedgedCall.Policy hedging = new HedgedCall.Policy();
+
+  static long nowMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  /**
+   * Sets how many tokens are kept ready and for how long each one is used.
+   * Tokens fetched with the previous configuration are dropped.
+   */
+  public static synchronized void configure(Long size, Long ttlSeconds) {
+    if (size != null && size >= 0) {
+      poolSize = size.intValue();
+    }
+    if (ttlSeconds != null && ttlSeconds > 0) {
+      ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+    tokens.clear();
+    generation++;
+  }
+
+  /**
+   * Turns on hedging of the token request: when it has not answered after
+   * {@code delayMillis}, or the rolling p90 of the previous ones, a second
+   * request is sent and the first answer is used.
+   */
+  public static void configureHedging(Boolean enabled, Long delayMillis) {
+    hedging.configure(enabled != null && enabled, delayMillis);
+  }
+
+  /**
+   * Starts filling the pool. Called once the SDK is initialized.
+   */
+  public static void prefetch() {
+    boolean shouldFetch;
+    synchronized (SessionTokenCache.class) {
+      lastUsedMillis = nowMillis();
+      shouldFetch = startFetchIfNeeded();
+    }
+    if (shouldFetch) {
+      fetch();
+    }
+  }
+
+  public static void acquire(@NonNull Callback callback) {
+    Entry entry;
+    boolean shouldFetch;
+    synchronized (SessionTokenCache.class) {
+      lastUsedMillis = nowMillis();
+      dropExpired();
+      entry = tokens.pollFirst();
+      if (entry == null) {
+        waiters.addLast(callback);
+      }
+      shouldFetch = startFetchIfNeeded();
+    }
+    if (shouldFetch) {
+      fetch();
+    }
+    if (entry != null) {
+      callback.onSessionToken(entry.sessionToken);
+    }
+  }
+
+  /**
+   * Whether a pooled token is ready, so a session can start without fetching
+   * one.
+   */
+  public static synchronized boolean hasToken() {
+    dropExpired();
+    return !tokens.isEmpty();
+  }
+
+  private static void dropExpired() {
+    final long now = nowMillis();
+    for (Iterator<Entry> iterator = tokens.iterator(); iterator.hasNext();) {
+      if (iterator.next().expiresAtMillis <= now) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Starts a fetch when a caller waits for a token, or when the pool is short
+   * of tokens while sessions are being started.
+   */
+  private static boolean startFetchIfNeeded() {
+    if (isFetching || (waiters.isEmpty() && (tokens.size() >= poolSize || !isActive()))) {
+      return false;
+    }
+    isFetching = true;
+    return true;
+  }
+
+  private static boolean isActive() {
+    return lastUsedMillis != Long.MIN_VALUE && nowMillis() - lastUsedMillis < ACTIVE_MILLIS;
+  }
+
+  private static void refresh() {
+    boolean shouldFetch;
+    synchronized (SessionTokenCache.class) {
+      final long now = nowMillis();
+      for (Iterator<Entry> iterator = tokens.iterator(); iterator.hasNext();) {
+        if (iterator.next().refreshAtMillis <= now) {
+          iterator.remove();
+        }
+      }
+      shouldFetch = startFetchIfNeeded();
+    }
+    if (shouldFetch) {
+      fetch();
+    }
+  }
+
+  private static void onFetched(int fetchGeneration, String sessionToken) {
+    Callback served;
+    boolean shouldFetch;
+    synchronized (SessionTokenCache.class) {
+      isFetching = false;
+      served = waiters.pollFirst();
+      if (served == null && fetchGeneration == generation && poolSize > 0) {
+        tokens.addLast(new Entry(sessionToken, nowMillis(), ttlMillis));
+        scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            refresh();
+          }
+        }, ttlMillis * 4 / 5, TimeUnit.MILLISECONDS);
+      }
+      shouldFetch = startFetchIfNeeded();
+    }
+    if (shouldFetch) {
+      fetch();
+    }
+    if (served != null) {
+      served.onSessionToken(sessionToken);
+    }
+  }
+
+  private static void onFetchFailed(String message, String code) {
+    ArrayDeque<Callback> failed;
+    synchronized (SessionTokenCache.class) {
+      isFetching = false;
+      failed = new ArrayDeque<>(waiters);
+      waiters.clear();
+    }
+    for (Callback waiter : failed) {
+      waiter.onError(message, code);
+    }
+  }
+
+  private static void fetch() {
+    final int fetchGeneration;
+    synchronized (SessionTokenCache.class) {
+      fetchGeneration = generation;
+    }
+
+    okhttp3.Request request = ApiEndpoint.SESSION_TOKEN.newRequest()
+        .get()
+        .build();
+
+    HedgedCall.enqueue(NetworkingHelpers.getApiClient(), request, hedging, new okhttp3.Callback() {
+      @Override
+      public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        e.printStackTrace();
+        Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
+        if (e instanceof CircuitBreaker.OpenException) {
+          onFetchFailed("CapFace backend is unavailable, try again later!", "CapFaceCircuitOpen");
+        } else {
+          onFetchFailed("Exception raised while attempting HTTPS call.", "HTTPSError");
+        }
+      }
+
+      @Override
+      public void onResponse(@NonNull Call call, @NonNull Response response) {
+        try {
+          final SessionTokenResponse tokenResponse = ResponseDecoder.decodeSessionToken(response.body());
+          if (tokenResponse.sessionToken != null) {
+            onFetched(fetchGeneration, tokenResponse.sessionToken);
+          } else {
+            final String errorMessage = tokenResponse.errorMessage != null
+                ? tokenResponse.errorMessage
+                : "Response JSON is missing sessionToken.";
+            onFetchFailed(errorMessage, "JSONError");
+          }
+        } catch (ResponseDecoder.DecodeException e) {
+          e.printStackTrace();
+          Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
+          onFetchFailed("Exception raised while attempting to parse JSON result.", "JSONError");
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,19 @@
+package com.capitual.processors;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The fields of a {@code /session-token} response: the token, or the error
+ * message explaining why there is none.
+ */
+final class SessionTokenResponse {
+  @Nullable
+  final String sessionToken;
+  @Nullable
+  final String errorMessage;
+
+  SessionTokenResponse(@Nullable String sessionToken, @Nullable String errorMessage) {
+    this.sessionToken = sessionToken;
+    this.errorMessage = errorMessage;
+  }
+}
@@ -0,0 +1,200 @@
+package com.capitual.processors;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.capitual.processors.helpers.CompiledTheme;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Saves the applied theme to a small binary file in the app's files
+ * directory, so that the next launch applies it when the module is created,
+ * before JS gets to send it.
+ *
+ * <p>The file holds a header, with a magic number, the format version, the
+ * hash of the theme as JS sent it and the length of the body, followed by the
+ * compiled theme. The hash is what {@link ThemeHelpers} uses to recognize a
+ * theme it already applied.
+ */
+public class ThemeCache {
+  private static final String FILE_NAME = "capface-theme.bin";
+  private static final int MAGIC = 0x43465448;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+      Thread thread = new Thread(runnable, "CapFace theme cache");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private static File file;
+  private static boolean isEnabled = false;
+  private static long latestThemeHash;
+  private static CompiledTheme latestTheme;
+
+  /**
+   * Turns saving the theme on or off. Turning it on saves the theme applied
+   * so far, turning it off deletes the saved one.
+   */
+  public static synchronized void configure(@NonNull Context context, boolean persist) {
+    file = new File(context.getFilesDir(), FILE_NAME);
+    isEnabled = persist;
+    if (!persist) {
+      delete(file);
+    } else if (latestTheme != null) {
+      write(file, latestThemeHash, latestTheme);
+    }
+  }
+
+  /**
+   * Applies the saved theme, if there is one, with a single read of the file.
+   * A file that does not match the current format is deleted.
+   */
+  public static void load(@NonNull Context context) {
+    final File saved = new File(context.getFilesDir(), FILE_NAME);
+    if (!saved.isFile()) {
+      return;
+    }
+    final byte[] bytes;
+    try (BufferedSource source = Okio.buffer(Okio.source(saved))) {
+      bytes = source.readByteArray();
+    } catch (IOException e) {
+      Log.d("Capitual - SDK", "Exception raised while reading the saved theme.");
+      return;
+    }
+
+    try {
+      final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+      final int magic = input.readInt();
+      final int formatVersion = input.readInt();
+      final long themeHash = input.readLong();
+      final int length = input.readInt();
+      if (magic != MAGIC || formatVersion != FORMAT_VERSION || length != bytes.length - HEADER_BYTES) {
+        Log.d("Capitual - SDK", "Saved theme is from another version, dropping it.");
+        delete(saved);
+        return;
+      }
+      ThemeHelpers.setCompiledTheme(CompiledTheme.readFrom(input, context), themeHash);
+    } catch (IOException e) {
+      Log.d("Capitual - SDK", "Saved theme is unreadable, dropping it.");
+      delete(saved);
+    }
+  }
+
+  /**
+   * Records the theme just applied and, when saving is on, writes it in the
+   * background.
+   */
+  static synchronized void save(long themeHash, @NonNull CompiledTheme theme) {
+    latestThemeHash = themeHash;
+    latestTheme = theme;
+    if (isEnabled) {
+      write(file, themeHash, theme);
+    }
+  }
+
+  private static void write(final File target, final long themeHash, final CompiledTheme theme) {
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        final File temporary = new File(target.getPath() + ".tmp");
+        try {
+          final ByteArrayOutputStream body = new ByteArrayOutputStream();
+          theme.writeTo(new DataOutputStream(body));
+          try (BufferedSink sink = Okio.buffer(Okio.sink(temporary))) {
+            sink.writeInt(MAGIC);
+            sink.writeInt(FORMAT_VERSION);
+            sink.writeLong(themeHash);
+            sink.writeInt(body.size());
+            sink.write(body.toByteArray());
+          }
+          if (!temporary.renameTo(target)) {
+            throw new IOException("Unable to replace " + target);
+          }
+        } catch (IOException e) {
+          Log.d("Capitual - SDK", "Exception raised while saving the theme.");
+          temporary.delete();
+        }
+      }
+    });
+  }
+
+  private static void delete(final File target) {
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        target.delete();
+      }
+    });
+  }
+
+  /**
+   * 64-bit FNV-1a hash of {@code theme}, over its keys in order, so the same
+   * theme hashes the same in every launch. A missing theme hashes to 0.
+   */
+  public static long hash(@Nullable ReadableMap theme) {
+    return theme == null ? 0 : hash(FNV_OFFSET_BASIS, theme.toHashMap());
+  }
+
+  private static long hash(long hash, @Nullable Object value) {
+    if (value == null) {
+      return mix(hash, 'N');
+    }
+    if (value instanceof Map) {
+      final TreeMap<String, Object> entries = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        entries.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      hash = mix(mix(hash, 'M'), entries.size());
+      for (Map.Entry<String, Object> entry : entries.entrySet()) {
+        hash = hash(hash(hash, entry.getKey()), entry.getValue());
+      }
+      return hash;
+    }
+    if (value instanceof List) {
+      final List<?> items = (List<?>) value;
+      hash = mix(mix(hash, 'L'), items.size());
+      for (Object item : items) {
+        hash = hash(hash, item);
+      }
+      return hash;
+    }
+
+    final String text = value.toString();
+    hash = mix(mix(hash, value instanceof String ? 'S' : value instanceof Boolean ? 'B' : 'D'), text.length());
+    for (int i = 0; i < text.length(); i++) {
+      hash = mix(hash, text.charAt(i));
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, int value) {
+    return (hash ^ value) * FNV_PRIME;
+  }
+}
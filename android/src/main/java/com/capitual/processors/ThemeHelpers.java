@@ -1,6 +1,7 @@
 package com.capitual.processors;
 
-import com.capitual.reactnativecapfacesdk.R;
+import com.capitual.processors.helpers.CompiledTheme;
+import com.capitual.processors.helpers.ThemeUtils;
 
 import com.facebook.react.bridge.ReadableMap;
 
@@ -8,43 +9,52 @@ import com.facetec.sdk.FaceTecCustomization;
 import com.facetec.sdk.FaceTecSDK;
 
 public class ThemeHelpers {
-	public static void setAppTheme(ReadableMap options) {
-		Config.setTheme(options);
-		Config.currentCustomization = getCustomizationForTheme();
-		Config.currentLowLightCustomization = getLowLightCustomizationForTheme();
-		Config.currentDynamicDimmingCustomization = getDynamicDimmingCustomizationForTheme();
-
-		FaceTecSDK.setCustomization(Config.currentCustomization);
-		FaceTecSDK.setLowLightCustomization(Config.currentLowLightCustomization);
-		FaceTecSDK.setDynamicDimmingCustomization(Config.currentDynamicDimmingCustomization);
+	private static CustomizationBuilder.Customizations appliedCustomizations;
+	private static long appliedThemeHash;
+
+	public static synchronized void setAppTheme(ReadableMap options) {
+		final long themeHash = ThemeCache.hash(options);
+		if (appliedCustomizations != null && themeHash == appliedThemeHash) {
+			return;
+		}
+		final CompiledTheme theme = ThemeUtils.compile(options);
+		Config.setTheme(options, theme);
+		applyTheme(themeHash);
+		ThemeCache.save(themeHash, theme);
 	}
 
-	public static FaceTecCustomization getCustomizationForTheme() {
-		FaceTecCustomization currentCustomization = new FaceTecCustomization();
-		currentCustomization = Config.retrieveConfigurationWizardCustomization();
-		currentCustomization
-				.getIdScanCustomization().customNFCStartingAnimation = R.drawable.facetec_nfc_starting_animation;
-		currentCustomization
-				.getIdScanCustomization().customNFCScanningAnimation = R.drawable.facetec_nfc_scanning_animation;
-		currentCustomization
-				.getIdScanCustomization().customNFCCardStartingAnimation = R.drawable.facetec_nfc_card_starting_animation;
-		currentCustomization
-				.getIdScanCustomization().customNFCCardScanningAnimation = R.drawable.facetec_nfc_card_scanning_animation;
-
-		return currentCustomization;
+	/**
+	 * Applies a theme compiled in an earlier launch, saved by ThemeCache.
+	 */
+	static synchronized void setCompiledTheme(CompiledTheme theme, long themeHash) {
+		Config.setTheme(null, theme);
+		applyTheme(themeHash);
 	}
 
-	static FaceTecCustomization getLowLightCustomizationForTheme() {
-		FaceTecCustomization currentLowLightCustomization = getCustomizationForTheme();
-		currentLowLightCustomization = Config.retrieveLowLightConfigurationWizardCustomization();
-
-		return currentLowLightCustomization;
+	/**
+	 * Applies the theme set so far, or the default one, unless a theme was
+	 * already applied.
+	 */
+	public static synchronized void applyCurrentTheme() {
+		if (appliedCustomizations == null) {
+			setAppTheme(Config.Theme);
+		}
 	}
 
-	static FaceTecCustomization getDynamicDimmingCustomizationForTheme() {
-		FaceTecCustomization currentDynamicDimmingCustomization = getCustomizationForTheme();
-		currentDynamicDimmingCustomization = Config.retrieveDynamicDimmingConfigurationWizardCustomization();
+	private static void applyTheme(long themeHash) {
+		appliedThemeHash = themeHash;
+		final CustomizationBuilder.Customizations customizations = CustomizationBuilder.build();
+		if (customizations == appliedCustomizations) {
+			return;
+		}
+		appliedCustomizations = customizations;
+
+		FaceTecSDK.setCustomization(customizations.customization);
+		FaceTecSDK.setLowLightCustomization(customizations.lowLightCustomization);
+		FaceTecSDK.setDynamicDimmingCustomization(customizations.dynamicDimmingCustomization);
+	}
 
-		return currentDynamicDimmingCustomization;
+	public static FaceTecCustomization getCustomizationForTheme() {
+		return CustomizationBuilder.build().customization;
 	}
 }
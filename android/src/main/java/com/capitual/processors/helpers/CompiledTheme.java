@@ -0,0 +1,273 @@
+package com.capitual.processors.helpers;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of the theme sent by JS, compiled once per
+ * {@code handleTheme} call so that lookups are plain map reads.
+ *
+ * <p>Colors are parsed to ints, border radii to ints, image names to drawable
+ * ids and message objects to flat string tables. Values that would not parse
+ * are left out, so their lookups fall back to the default.
+ */
+public final class CompiledTheme {
+  public static final CompiledTheme EMPTY = new CompiledTheme(
+      Collections.<String, Integer>emptyMap(),
+      Collections.<String, Integer>emptyMap(),
+      Collections.<String, Integer>emptyMap(),
+      Collections.<String, String>emptyMap(),
+      Collections.<String, Map<String, String>>emptyMap());
+
+  /** Theme keys whose value names a drawable. */
+  static final String[] IMAGE_KEYS = { "logoImage", "cancelImage" };
+
+  private final Map<String, Integer> colors;
+  private final Map<String, Integer> borderRadii;
+  private final Map<String, Integer> images;
+  private final Map<String, String> strings;
+  private final Map<String, Map<String, String>> messages;
+
+  private CompiledTheme(Map<String, Integer> colors, Map<String, Integer> borderRadii, Map<String, Integer> images,
+      Map<String, String> strings, Map<String, Map<String, String>> messages) {
+    this.colors = colors;
+    this.borderRadii = borderRadii;
+    this.images = images;
+    this.strings = strings;
+    this.messages = messages;
+  }
+
+  /**
+   * Compiles {@code theme}. Image names are resolved against {@code context};
+   * without one, every image keeps its default.
+   */
+  @NonNull
+  public static CompiledTheme compile(@Nullable ReadableMap theme, @Nullable Context context) {
+    if (theme == null) {
+      return EMPTY;
+    }
+    final Map<String, Integer> colors = new HashMap<>();
+    final Map<String, Integer> borderRadii = new HashMap<>();
+    final Map<String, String> strings = new HashMap<>();
+    final Map<String, Map<String, String>> messages = new HashMap<>();
+
+    for (Map.Entry<String, Object> entry : theme.toHashMap().entrySet()) {
+      final String key = entry.getKey();
+      final Object value = entry.getValue();
+      if (value instanceof String) {
+        final String text = (String) value;
+        if (text.isEmpty()) {
+          continue;
+        }
+        strings.put(key, text);
+        if (!isImageKey(key)) {
+          final Integer color = parseColor(text);
+          if (color != null) {
+            colors.put(key, color);
+          }
+        }
+      } else if (value instanceof Number) {
+        final int borderRadius = ((Number) value).intValue();
+        if (borderRadius >= 0) {
+          borderRadii.put(key, borderRadius);
+        }
+      } else if (value instanceof Map) {
+        messages.put(key, compileMessages((Map<?, ?>) value));
+      }
+    }
+
+    return new CompiledTheme(
+        Collections.unmodifiableMap(colors),
+        Collections.unmodifiableMap(borderRadii),
+        resolveImages(strings, context),
+        Collections.unmodifiableMap(strings),
+        Collections.unmodifiableMap(messages));
+  }
+
+  /**
+   * Reads a theme written by {@link #writeTo}, resolving its images against
+   * {@code context}.
+   */
+  @NonNull
+  public static CompiledTheme readFrom(DataInputStream input, @Nullable Context context) throws IOException {
+    final Map<String, Integer> colors = readInts(input);
+    final Map<String, Integer> borderRadii = readInts(input);
+    final Map<String, String> strings = readStrings(input);
+    final int messageCount = input.readInt();
+    final Map<String, Map<String, String>> messages = new HashMap<>();
+    for (int i = 0; i < messageCount; i++) {
+      final String key = input.readUTF();
+      messages.put(key, Collections.unmodifiableMap(readStrings(input)));
+    }
+
+    return new CompiledTheme(
+        Collections.unmodifiableMap(colors),
+        Collections.unmodifiableMap(borderRadii),
+        resolveImages(strings, context),
+        Collections.unmodifiableMap(strings),
+        Collections.unmodifiableMap(messages));
+  }
+
+  /**
+   * Writes the theme in key order. Images are written by name, as their ids
+   * change between builds of the app.
+   */
+  public void writeTo(DataOutputStream output) throws IOException {
+    writeInts(output, colors);
+    writeInts(output, borderRadii);
+    writeStrings(output, strings);
+    output.writeInt(messages.size());
+    for (Map.Entry<String, Map<String, String>> message : new TreeMap<>(messages).entrySet()) {
+      output.writeUTF(message.getKey());
+      writeStrings(output, message.getValue());
+    }
+  }
+
+  private static Map<String, Integer> readInts(DataInputStream input) throws IOException {
+    final int count = input.readInt();
+    final Map<String, Integer> values = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      final String key = input.readUTF();
+      values.put(key, input.readInt());
+    }
+    return values;
+  }
+
+  private static Map<String, String> readStrings(DataInputStream input) throws IOException {
+    final int count = input.readInt();
+    final Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      final String key = input.readUTF();
+      values.put(key, input.readUTF());
+    }
+    return values;
+  }
+
+  private static void writeInts(DataOutputStream output, Map<String, Integer> values) throws IOException {
+    output.writeInt(values.size());
+    for (Map.Entry<String, Integer> value : new TreeMap<>(values).entrySet()) {
+      output.writeUTF(value.getKey());
+      output.writeInt(value.getValue());
+    }
+  }
+
+  private static void writeStrings(DataOutputStream output, Map<String, String> values) throws IOException {
+    output.writeInt(values.size());
+    for (Map.Entry<String, String> value : new TreeMap<>(values).entrySet()) {
+      output.writeUTF(value.getKey());
+      output.writeUTF(value.getValue());
+    }
+  }
+
+  private static Map<String, Integer> resolveImages(Map<String, String> strings, @Nullable Context context) {
+    final Map<String, Integer> images = new HashMap<>();
+    for (String key : IMAGE_KEYS) {
+      final String imageName = strings.get(key);
+      final int resourceId = imageName == null ? 0 : resolveDrawable(context, imageName);
+      if (resourceId != 0) {
+        images.put(key, resourceId);
+      }
+    }
+    return Collections.unmodifiableMap(images);
+  }
+
+  private static Map<String, String> compileMessages(Map<?, ?> message) {
+    final Map<String, String> table = new HashMap<>();
+    for (Map.Entry<?, ?> child : message.entrySet()) {
+      if (child.getKey() != null && child.getValue() != null && !(child.getValue() instanceof Map)) {
+        table.put(child.getKey().toString(), child.getValue().toString());
+      }
+    }
+    return Collections.unmodifiableMap(table);
+  }
+
+  private static boolean isImageKey(String key) {
+    for (String imageKey : IMAGE_KEYS) {
+      if (imageKey.equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  private static Integer parseColor(String color) {
+    try {
+      return Color.parseColor(color);
+    } catch (IllegalArgumentException error) {
+      return null;
+    }
+  }
+
+  private static int resolveDrawable(@Nullable Context context, String imageName) {
+    return context == null ? 0 : DrawableIdCache.resolve(context, imageName);
+  }
+
+  /**
+   * Themes are equal when every compiled value is, so sending the same theme
+   * again compiles to an equal snapshot.
+   */
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof CompiledTheme)) {
+      return false;
+    }
+    final CompiledTheme theme = (CompiledTheme) other;
+    return colors.equals(theme.colors)
+        && borderRadii.equals(theme.borderRadii)
+        && images.equals(theme.images)
+        && strings.equals(theme.strings)
+        && messages.equals(theme.messages);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = colors.hashCode();
+    hash = 31 * hash + borderRadii.hashCode();
+    hash = 31 * hash + images.hashCode();
+    hash = 31 * hash + strings.hashCode();
+    return 31 * hash + messages.hashCode();
+  }
+
+  public int color(String key, int defaultColor) {
+    final Integer color = colors.get(key);
+    return color == null ? defaultColor : color;
+  }
+
+  public int borderRadius(String key, int defaultBorderRadius) {
+    final Integer borderRadius = borderRadii.get(key);
+    return borderRadius == null ? defaultBorderRadius : borderRadius;
+  }
+
+  public int image(String key, int defaultImage) {
+    final Integer image = images.get(key);
+    return image == null ? defaultImage : image;
+  }
+
+  @Nullable
+  public String string(String key) {
+    return strings.get(key);
+  }
+
+  @Nullable
+  public String message(String key, String child) {
+    final Map<String, String> message = messages.get(key);
+    return message == null ? null : message.get(child);
+  }
+}
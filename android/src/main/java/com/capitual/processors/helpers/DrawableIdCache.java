@@ -0,0 +1,89 @@
+package com.capitual.processors.helpers;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide cache of drawable ids by name, since
+ * {@code Resources.getIdentifier} is a slow, reflective lookup. Ids do not
+ * change while the process runs, so each name is resolved once and never
+ * cleared.
+ *
+ * <p>The images of a new theme are resolved in the background as soon as it
+ * arrives. A lookup of a name that is being resolved waits for that result,
+ * and one still queued is resolved by the caller.
+ */
+public class DrawableIdCache {
+  private static final ConcurrentHashMap<String, FutureTask<Integer>> ids = new ConcurrentHashMap<>();
+  private static final ExecutorService resolver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+      Thread thread = new Thread(runnable, "CapFace drawable ids");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Returns the id of the drawable named {@code name}, or 0 when there is none.
+   */
+  public static int resolve(Context context, String name) {
+    final FutureTask<Integer> id = task(context, name);
+    id.run();
+    try {
+      return id.get();
+    } catch (InterruptedException error) {
+      Thread.currentThread().interrupt();
+      return 0;
+    } catch (ExecutionException error) {
+      return 0;
+    }
+  }
+
+  /**
+   * Starts resolving the images of {@code theme} in the background, so that
+   * compiling it finds them cached.
+   */
+  public static void preResolve(Context context, ReadableMap theme) {
+    for (String key : CompiledTheme.IMAGE_KEYS) {
+      if (!theme.hasKey(key) || theme.getType(key) != ReadableType.String) {
+        continue;
+      }
+      final String name = theme.getString(key);
+      if (name == null || name.isEmpty()) {
+        continue;
+      }
+      final FutureTask<Integer> id = task(context, name);
+      if (!id.isDone()) {
+        resolver.execute(id);
+      }
+    }
+  }
+
+  private static FutureTask<Integer> task(final Context context, final String name) {
+    final FutureTask<Integer> cached = ids.get(name);
+    if (cached != null) {
+      return cached;
+    }
+    final FutureTask<Integer> id = new FutureTask<>(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return context.getResources().getIdentifier(name, "drawable", context.getPackageName());
+      }
+    });
+    final FutureTask<Integer> raced = ids.putIfAbsent(name, id);
+    return raced == null ? id : raced;
+  }
+}
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.capitual.processors.helpers.ThemeUtils;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
@@ -13,16 +14,11 @@ import com.facebook.react.module.annotations.ReactModule;
 import android.util.Log;
 
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-
 import com.capitual.processors.*;
 
 import static java.util.UUID.randomUUID;
@@ -30,14 +26,23 @@ import static java.util.UUID.randomUUID;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facetec.sdk.*;
 
+import okhttp3.HttpUrl;
+
 @ReactModule(name = ReactNativeCapfaceSdkModule.NAME)
-public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
+public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule implements SessionHost {
   public static final String NAME = "ReactNativeCapfaceSdk";
+  private static final String[] STRING_OPTIONS = { "device", "url", "key", "productionKey" };
+  private static final String[] BOOLEAN_OPTIONS = { "isDeveloperMode", "sessionTokenHedging", "sessionMetrics",
+      "persistTheme" };
+  private static final String[] NON_NEGATIVE_OPTIONS = { "compressionThreshold", "sessionTokenPoolSize",
+      "sessionTokenHedgeDelay" };
+  private static final String[] POSITIVE_OPTIONS = { "sessionTokenTTL", "minRequestTimeout", "maxRequestTimeout" };
   private static final ThemeUtils capThemeUtils = new ThemeUtils();
   private final ReactApplicationContext reactContext;
   private boolean isInitialized = false;
   private boolean isSessionPreparingToLaunch = false;
   private String latestExternalDatabaseRefID = "";
+  private String latestSessionId = null;
   public Promise processorPromise;
   public Processor latestProcessor;
   public FaceTecSessionResult latestSessionResult;
@@ -47,6 +52,7 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
     super(context);
     reactContext = context;
     capThemeUtils.setReactContext(context);
+    ThemeCache.load(context);
   }
 
   @Override
@@ -56,29 +62,111 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
   }
 
   private boolean isDeveloperMode(Map params) {
-    if (params.containsKey("isDeveloperMode")) {
+    if (params.get("isDeveloperMode") != null) {
       return params.get("isDeveloperMode").toString().equals("true");
     }
     return false;
   }
 
   private String getKeyValue(@NonNull Map object, String key) {
-    if (object.containsKey(key)) {
+    if (object.get(key) != null) {
       return object.get(key).toString();
     }
     return null;
   }
 
-  private void handleCapFaceConfiguration(@NonNull Map params, ReadableMap headers) {
-    try {
-      Config.setDevice(getKeyValue(params, "device"));
-      Config.setUrl(getKeyValue(params, "url"));
-      Config.setKey(getKeyValue(params, "key"));
-      Config.setProductionKeyText(getKeyValue(params, "productionKey"));
-      Config.setHeaders(headers);
-    } catch (Exception error) {
-      Log.d("Capitual - SDK", "CapFace SDK Configuration doesn't exists!");
+  private Long getLongValue(@NonNull Map object, String key) {
+    if (object.containsKey(key) && object.get(key) instanceof Number) {
+      return ((Number) object.get(key)).longValue();
     }
+    return null;
+  }
+
+  /**
+   * Returns why {@code params} can't be applied, or {@code null} when every
+   * option it sets is valid. Missing and {@code null} options keep their
+   * defaults.
+   */
+  @Nullable
+  private String validateConfiguration(@NonNull Map params) {
+    for (String option : STRING_OPTIONS) {
+      if (params.get(option) != null && !(params.get(option) instanceof String)) {
+        return "Option " + option + " must be a string.";
+      }
+    }
+    for (String option : BOOLEAN_OPTIONS) {
+      if (params.get(option) != null && !(params.get(option) instanceof Boolean)) {
+        return "Option " + option + " must be a boolean.";
+      }
+    }
+    for (String option : NON_NEGATIVE_OPTIONS) {
+      final Object value = params.get(option);
+      if (value != null && !(value instanceof Number && ((Number) value).doubleValue() >= 0)) {
+        return "Option " + option + " must be a number of at least 0.";
+      }
+    }
+    for (String option : POSITIVE_OPTIONS) {
+      final Object value = params.get(option);
+      if (value != null && !(value instanceof Number && ((Number) value).doubleValue() > 0)) {
+        return "Option " + option + " must be a number greater than 0.";
+      }
+    }
+    final Long minTimeout = getLongValue(params, "minRequestTimeout");
+    final Long maxTimeout = getLongValue(params, "maxRequestTimeout");
+    if (minTimeout != null && maxTimeout != null && minTimeout > maxTimeout) {
+      return "Option minRequestTimeout must not be greater than maxRequestTimeout.";
+    }
+
+    final String compression = getKeyValue(params, "compression");
+    if (compression != null && !compression.equalsIgnoreCase("none") && !compression.equalsIgnoreCase("gzip")
+        && !compression.equalsIgnoreCase("deflate")) {
+      return "Option compression must be none, gzip or deflate.";
+    }
+
+    if (params.get("url") != null && HttpUrl.parse(getKeyValue(params, "url")) == null) {
+      return "Option url must be an http or https URL.";
+    }
+    final Object urls = params.get("urls");
+    if (urls != null) {
+      if (!(urls instanceof List)) {
+        return "Option urls must be a list of URLs.";
+      }
+      for (Object url : (List<?>) urls) {
+        if (!(url instanceof String) || HttpUrl.parse((String) url) == null) {
+          return "Option urls has an invalid URL: " + url + ".";
+        }
+      }
+    }
+
+    final Object deferredFields = params.get("deferredFields");
+    if (deferredFields != null) {
+      if (!(deferredFields instanceof List)) {
+        return "Option deferredFields must be a list of fields.";
+      }
+      for (Object field : (List<?>) deferredFields) {
+        if (!DeferredArtifacts.isDeferrable(field)) {
+          return "Option deferredFields has a field that can't be deferred: " + field + ".";
+        }
+      }
+    }
+    return null;
+  }
+
+  private void handleCapFaceConfiguration(@NonNull Map params, ReadableMap headers) {
+    Config.setDevice(getKeyValue(params, "device"));
+    Config.setUrl(getKeyValue(params, "url"));
+    Config.setKey(getKeyValue(params, "key"));
+    Config.setProductionKeyText(getKeyValue(params, "productionKey"));
+    Config.setHeaders(headers);
+    Config.setUploadCompression(getKeyValue(params, "compression"), getLongValue(params, "compressionThreshold"));
+    SessionTokenCache.configure(getLongValue(params, "sessionTokenPoolSize"), getLongValue(params, "sessionTokenTTL"));
+    SessionTokenCache.configureHedging("true".equals(getKeyValue(params, "sessionTokenHedging")),
+        getLongValue(params, "sessionTokenHedgeDelay"));
+    NetworkingHelpers.setTimeouts(getLongValue(params, "minRequestTimeout"), getLongValue(params, "maxRequestTimeout"));
+    DeferredArtifacts.configure(params.get("deferredFields"));
+    EndpointRouter.configure(Config.BaseURL, params.get("urls"));
+    SessionMetrics.configure("true".equals(getKeyValue(params, "sessionMetrics")));
+    ThemeCache.configure(reactContext, "true".equals(getKeyValue(params, "persistTheme")));
   }
 
   @ReactMethod
@@ -90,13 +178,27 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
-    handleCapFaceConfiguration(params.toHashMap(), headers);
+    final Map configuration = params.toHashMap();
+    final String invalidOption = validateConfiguration(configuration);
+    if (invalidOption != null) {
+      isInitialized = false;
+      callback.invoke(false, "CapFaceInvalidConfiguration", invalidOption);
+      Log.d("Capitual - SDK", invalidOption);
+      return;
+    }
+
+    handleCapFaceConfiguration(configuration, headers);
 
     if (Config.hasConfig()) {
+      EndpointRouter.probe();
       Config.initialize(reactContext, isDeveloperMode(params.toHashMap()), new FaceTecSDK.InitializeCallback() {
         @Override
         public void onCompletion(final boolean successful) {
           isInitialized = successful;
+          if (successful) {
+            SessionTokenCache.prefetch();
+            DeferredUploadQueue.start(reactContext);
+          }
           callback.invoke(successful);
         }
       });
@@ -106,7 +208,7 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       Log.d("Capitual - SDK", "CapFace SDK doesn't initialized!");
     }
 
-    this.handleTheme(Config.Theme);
+    ThemeHelpers.applyCurrentTheme();
   }
 
   interface SessionTokenCallback {
@@ -114,53 +216,34 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
   }
 
   public void getSessionToken(final SessionTokenCallback sessionTokenCallback) {
-    okhttp3.Request request = new okhttp3.Request.Builder()
-        .headers(Config.getHeaders("GET"))
-        .url(Config.BaseURL + "/session-token")
-        .get()
-        .build();
-
-    NetworkingHelpers.getApiClient().newCall(request).enqueue(new Callback() {
+    final String sessionId = latestSessionId;
+    SessionTokenCache.acquire(new SessionTokenCache.Callback() {
       @Override
-      public void onFailure(Call call, IOException e) {
-        e.printStackTrace();
-        Log.d("Capitual - HTTPS", "Exception raised while attempting HTTPS call.");
-        if (processorPromise != null) {
-          processorPromise.reject("Exception raised while attempting HTTPS call.", "HTTPSError");
+      public void onSessionToken(String sessionToken) {
+        if (SessionCallRegistry.isCancelled(sessionId)) {
+          Log.d("Capitual - SDK", "Session was cancelled before it launched.");
+          return;
         }
+        SessionMetrics.lap(sessionId, "token");
+        sessionTokenCallback.onSessionTokenReceived(sessionToken);
       }
 
       @Override
-      public void onResponse(Call call, okhttp3.Response response) throws IOException {
-        String responseString = response.body().string();
-        response.body().close();
-        try {
-          JSONObject responseJSON = new JSONObject(responseString);
-          if (responseJSON.has("sessionToken")) {
-            sessionTokenCallback.onSessionTokenReceived(responseJSON.getString("sessionToken"));
-          } else {
-            final String errorMessage = responseJSON.has("errorMessage")
-                ? responseJSON.getString("errorMessage")
-                : "Response JSON is missing sessionToken.";
-            if (processorPromise != null) {
-              processorPromise.reject(errorMessage, "JSONError");
-            }
-          }
-        } catch (JSONException e) {
-          e.printStackTrace();
-          Log.d("Capitual - JSON", "Exception raised while attempting to parse JSON result.");
-          if (processorPromise != null) {
-            processorPromise.reject("Exception raised while attempting to parse JSON result.", "JSONError");
-          }
+      public void onError(String message, String code) {
+        SessionMetrics.finish(sessionId, code);
+        if (processorPromise != null) {
+          processorPromise.reject(message, code);
         }
       }
     });
   }
 
+  @Override
   public void setLatestSessionResult(FaceTecSessionResult sessionResult) {
     this.latestSessionResult = sessionResult;
   }
 
+  @Override
   public void setLatestIDScanResult(FaceTecIDScanResult idScanResult) {
     this.latestIDScanResult = idScanResult;
   }
@@ -174,14 +257,45 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
     this.latestExternalDatabaseRefID = externalDatabaseRefID;
   }
 
+  @Override
   public String getLatestExternalDatabaseRefID() {
     return this.latestExternalDatabaseRefID;
   }
 
+  @Override
+  public String getLatestSessionId() {
+    return this.latestSessionId;
+  }
+
+  /**
+   * Resolves the session's promise with {@code true}, or with the session's
+   * timings when the {@code sessionMetrics} option is on.
+   */
+  @Override
+  public void resolveProcessorPromise(String sessionId, ApiEndpoint endpoint) {
+    LatencyHistograms.record(endpoint, LatencyHistograms.Metric.SESSION,
+        SessionMetrics.finish(sessionId, SessionMetrics.RESOLVED));
+    if (!SessionMetrics.isReturnedWithResult()) {
+      processorPromise.resolve(true);
+      return;
+    }
+    WritableMap result = Arguments.createMap();
+    result.putBoolean("successful", true);
+    result.putMap("metrics", SessionMetrics.toWritableMap(sessionId));
+    processorPromise.resolve(result);
+  }
+
+  @Override
+  public void rejectProcessorPromise(String message, String code) {
+    SessionMetrics.finish(latestSessionId, code);
+    processorPromise.reject(message, code);
+  }
+
   public void setProcessorPromise(Promise promise) {
     this.processorPromise = promise;
   }
 
+  @Override
   public void sendEvent(@NonNull String eventName, @Nullable Boolean eventValue) {
     reactContext
         .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -196,6 +310,23 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
   public void removeListeners(Integer count) {
   }
 
+  /**
+   * Rejects the session before the camera opens when the backend is known to
+   * be failing for any of the session's endpoints, or for the session token
+   * while none is pooled.
+   */
+  private boolean rejectIfCircuitOpen(ApiEndpoint... endpoints) {
+    boolean isOpen = CircuitBreaker.isOpen(ApiEndpoint.SESSION_TOKEN) && !SessionTokenCache.hasToken();
+    for (ApiEndpoint endpoint : endpoints) {
+      isOpen = isOpen || CircuitBreaker.isOpen(endpoint);
+    }
+    if (isOpen) {
+      Log.d("Capitual - SDK", "CapFace backend is unavailable!");
+      rejectProcessorPromise("CapFace backend is unavailable, try again later!", "CapFaceCircuitOpen");
+    }
+    return isOpen;
+  }
+
   @ReactMethod
   public void handleLivenessCheck(ReadableMap data, Promise promise) {
     setProcessorPromise(promise);
@@ -205,6 +336,13 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
+    latestSessionId = randomUUID().toString();
+    SessionMetrics.start(latestSessionId);
+
+    if (rejectIfCircuitOpen(ApiEndpoint.LIVENESS_3D)) {
+      return;
+    }
+
     isSessionPreparingToLaunch = true;
 
     getSessionToken(new SessionTokenCallback() {
@@ -227,6 +365,13 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
+    latestSessionId = randomUUID().toString();
+    SessionMetrics.start(latestSessionId);
+
+    if (rejectIfCircuitOpen(ApiEndpoint.ENROLLMENT_3D)) {
+      return;
+    }
+
     isSessionPreparingToLaunch = true;
 
     getSessionToken(new SessionTokenCallback() {
@@ -250,6 +395,13 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
+    latestSessionId = randomUUID().toString();
+    SessionMetrics.start(latestSessionId);
+
+    if (rejectIfCircuitOpen(ApiEndpoint.MATCH_3D_3D)) {
+      return;
+    }
+
     isSessionPreparingToLaunch = true;
 
     getSessionToken(new SessionTokenCallback() {
@@ -272,6 +424,13 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
+    latestSessionId = randomUUID().toString();
+    SessionMetrics.start(latestSessionId);
+
+    if (rejectIfCircuitOpen(ApiEndpoint.ENROLLMENT_3D, ApiEndpoint.MATCH_3D_2D_IDSCAN)) {
+      return;
+    }
+
     isSessionPreparingToLaunch = true;
 
     getSessionToken(new SessionTokenCallback() {
@@ -295,6 +454,13 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
       return;
     }
 
+    latestSessionId = randomUUID().toString();
+    SessionMetrics.start(latestSessionId);
+
+    if (rejectIfCircuitOpen(ApiEndpoint.IDSCAN_ONLY)) {
+      return;
+    }
+
     isSessionPreparingToLaunch = true;
 
     getSessionToken(new SessionTokenCallback() {
@@ -308,8 +474,60 @@ public class ReactNativeCapfaceSdkModule extends ReactContextBaseJavaModule {
     });
   }
 
+  @ReactMethod
+  public void getNetworkEstimate(Promise promise) {
+    WritableMap estimate = Arguments.createMap();
+    estimate.putDouble("throughputKbps", BandwidthEstimator.getThroughputKbps());
+    estimate.putDouble("rttMs", BandwidthEstimator.getRttMillis());
+    estimate.putInt("samples", BandwidthEstimator.getSamples());
+    estimate.putString("quality", BandwidthEstimator.getQuality().name());
+    promise.resolve(estimate);
+  }
+
+  @ReactMethod
+  public void cancelSession(@Nullable String sessionId, Promise promise) {
+    final String cancelledSessionId = sessionId == null || sessionId.isEmpty() ? latestSessionId : sessionId;
+    boolean wasCancelled = SessionCallRegistry.cancelSession(cancelledSessionId);
+    if (wasCancelled) {
+      SessionMetrics.finish(cancelledSessionId, "CapFaceSessionCancelled");
+    }
+
+    if (cancelledSessionId != null && cancelledSessionId.equals(latestSessionId) && isSessionPreparingToLaunch) {
+      isSessionPreparingToLaunch = false;
+      wasCancelled = true;
+      SessionMetrics.finish(cancelledSessionId, "CapFaceSessionCancelled");
+      if (processorPromise != null) {
+        processorPromise.reject("The session was cancelled!", "CapFaceSessionCancelled");
+      }
+    }
+    promise.resolve(wasCancelled);
+  }
+
+  @ReactMethod
+  public void getSessionMetrics(@Nullable String sessionId, Promise promise) {
+    final String metricsSessionId = sessionId == null || sessionId.isEmpty() ? latestSessionId : sessionId;
+    promise.resolve(SessionMetrics.toWritableMap(metricsSessionId));
+  }
+
+  @ReactMethod
+  public void getLatencyHistograms(Promise promise) {
+    promise.resolve(LatencyHistograms.snapshotAndReset());
+  }
+
+  @ReactMethod
+  public void getConnectionStats(Promise promise) {
+    final long uploads = ConnectionWarmer.getUploads();
+    final long warmUploads = ConnectionWarmer.getWarmUploads();
+    WritableMap stats = Arguments.createMap();
+    stats.putDouble("uploads", uploads);
+    stats.putDouble("warmUploads", warmUploads);
+    stats.putDouble("warmUploadRatio", uploads == 0 ? 0 : (double) warmUploads / uploads);
+    promise.resolve(stats);
+  }
+
   @ReactMethod
   public void handleTheme(ReadableMap options) {
+    ThemeUtils.preResolveImages(options);
     ThemeHelpers.setAppTheme(options);
   }
 }
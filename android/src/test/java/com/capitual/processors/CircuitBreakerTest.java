@@ -0,0 +1,165 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+
+/**
+ * State transitions of {@link CircuitBreaker}, on breakers of their own that
+ * stay open for {@link #OPEN_MILLIS}, and the API client refusing calls once
+ * an endpoint's breaker opens.
+ */
+public class CircuitBreakerTest {
+  private static final long OPEN_MILLIS = 100;
+
+  private FakeCapFaceBackend backend;
+
+  @After
+  public void tearDown() throws IOException {
+    if (backend != null) {
+      backend.close();
+    }
+  }
+
+  @Test
+  public void staysClosedBelowMinimumCalls() {
+    final CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS - 1; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void opensWhenHalfOfTheCallsFail() {
+    final CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+      if (i % 2 == 0) {
+        breaker.onFailure();
+      } else {
+        breaker.onSuccess(0);
+      }
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void opensWhenMostCallsAreSlow() {
+    final CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onSuccess(ApiEndpoint.LIVENESS_3D.slowCallMillis + 1);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void letsOneProbeThroughOnceHalfOpen() throws InterruptedException {
+    final CircuitBreaker breaker = openBreaker();
+    Thread.sleep(OPEN_MILLIS + 20);
+
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void closesWhenTheProbeSucceeds() throws InterruptedException {
+    final CircuitBreaker breaker = openBreaker();
+    Thread.sleep(OPEN_MILLIS + 20);
+
+    assertTrue(breaker.tryAcquire());
+    breaker.onSuccess(0);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  @Test
+  public void opensAgainWhenTheProbeFails() throws InterruptedException {
+    final CircuitBreaker breaker = openBreaker();
+    Thread.sleep(OPEN_MILLIS + 20);
+
+    assertTrue(breaker.tryAcquire());
+    breaker.onFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void ignoredProbeLetsAnotherOneThrough() throws InterruptedException {
+    final CircuitBreaker breaker = openBreaker();
+    Thread.sleep(OPEN_MILLIS + 20);
+
+    assertTrue(breaker.tryAcquire());
+    breaker.onIgnored();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  /**
+   * Uses the API client's own breaker of {@code /idscan-only}, which stays
+   * open for the rest of the run, so no other test may call that endpoint.
+   */
+  @Test
+  public void apiClientRefusesCallsWhileOpen() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("breaker-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+    backend.failNext(ApiEndpoint.IDSCAN_ONLY, FakeCapFaceBackend.Fault.HTTP_500, 2 * CircuitBreaker.MIN_CALLS);
+
+    // Each attempt is an outcome, so retries open the breaker mid-call.
+    for (int call = 0; !CircuitBreaker.isOpen(ApiEndpoint.IDSCAN_ONLY); call++) {
+      assertTrue("The breaker did not open", call < CircuitBreaker.MIN_CALLS);
+      try {
+        execute(idScanRequest());
+      } catch (CircuitBreaker.OpenException ignored) {
+        // Refused between two attempts.
+      }
+    }
+    final int requests = backend.requestCount(ApiEndpoint.IDSCAN_ONLY);
+    assertEquals(CircuitBreaker.MIN_CALLS, requests);
+
+    try {
+      execute(idScanRequest());
+      fail("The call went out while the breaker was open.");
+    } catch (CircuitBreaker.OpenException expected) {
+      assertEquals(requests, backend.requestCount(ApiEndpoint.IDSCAN_ONLY));
+    }
+  }
+
+  private static CircuitBreaker newBreaker() {
+    return new CircuitBreaker(ApiEndpoint.LIVENESS_3D, OPEN_MILLIS);
+  }
+
+  private static CircuitBreaker openBreaker() {
+    final CircuitBreaker breaker = newBreaker();
+    for (int i = 0; i < CircuitBreaker.MIN_CALLS; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    return breaker;
+  }
+
+  private static void execute(Request request) throws IOException {
+    NetworkingHelpers.getApiClient().newCall(request).execute().close();
+  }
+
+  private static Request idScanRequest() {
+    return ApiEndpoint.IDSCAN_ONLY.newRequest()
+        .post(new JsonStreamRequestBody().put("idScan", "aWRTY2Fu"))
+        .build();
+  }
+}
@@ -0,0 +1,157 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+
+/**
+ * {@link CompressionInterceptor} through the real API client, against
+ * {@link FakeCapFaceBackend}.
+ */
+public class CompressionInterceptorTest {
+  private FakeCapFaceBackend backend;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("compression-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Config.setUploadCompression(null, 1024L);
+    backend.close();
+  }
+
+  @Test
+  public void streamsGzipBody() throws Exception {
+    Config.setUploadCompression("gzip", 0L);
+    final JsonStreamRequestBody body = scanBody();
+
+    assertEquals(200, upload(body));
+
+    final RecordedRequest request = backend.takeRequest(1000);
+    assertEquals("gzip", request.getHeader("Content-Encoding"));
+    // The length is unknown until the body is compressed on the wire.
+    assertNull(request.getHeader("Content-Length"));
+    assertEquals(utf8(body), Okio.buffer(new GzipSource(request.getBody())).readUtf8());
+  }
+
+  @Test
+  public void streamsDeflateBody() throws Exception {
+    Config.setUploadCompression("deflate", 0L);
+    final JsonStreamRequestBody body = scanBody();
+
+    assertEquals(200, upload(body));
+
+    final RecordedRequest request = backend.takeRequest(1000);
+    assertEquals("deflate", request.getHeader("Content-Encoding"));
+    assertEquals(utf8(body), Okio.buffer(new InflaterSource(request.getBody(), new Inflater())).readUtf8());
+  }
+
+  @Test
+  public void reportsProgressInCompressedBytes() throws Exception {
+    Config.setUploadCompression("gzip", 0L);
+    final List<long[]> updates = new ArrayList<>();
+    final ProgressRequestBody.Listener listener = new ProgressRequestBody.Listener() {
+      @Override
+      public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+        updates.add(new long[] { bytesWritten, totalBytes });
+      }
+    };
+    final JsonStreamRequestBody body = scanBody();
+
+    assertEquals(200, upload(new ProgressRequestBody(body, listener)));
+
+    final long compressedBytes = backend.takeRequest(1000).getBodySize();
+    assertTrue(compressedBytes < body.contentLength());
+    final long[] last = updates.get(updates.size() - 1);
+    assertEquals(compressedBytes, last[0]);
+    assertEquals(compressedBytes, last[1]);
+    for (long[] update : updates) {
+      assertTrue(update[0] <= update[1]);
+    }
+
+    // The next upload of the same body is sized by the ratio just measured.
+    updates.clear();
+    assertEquals(200, upload(new ProgressRequestBody(scanBody(), listener)));
+    backend.takeRequest(1000);
+    assertEquals(compressedBytes, updates.get(0)[1], 1);
+  }
+
+  @Test
+  public void leavesBodiesUnderThresholdUncompressed() throws Exception {
+    final JsonStreamRequestBody body = scanBody();
+    Config.setUploadCompression("gzip", body.contentLength() + 1);
+
+    assertEquals(200, upload(body));
+
+    final RecordedRequest request = backend.takeRequest(1000);
+    assertNull(request.getHeader("Content-Encoding"));
+    assertEquals(String.valueOf(body.contentLength()), request.getHeader("Content-Length"));
+  }
+
+  @Test
+  public void resendsUncompressedAfter415() throws Exception {
+    Config.setUploadCompression("gzip", 0L);
+    backend.setRejectsCompression(true);
+    final JsonStreamRequestBody body = scanBody();
+
+    assertEquals(200, upload(body));
+
+    assertEquals("gzip", backend.takeRequest(1000).getHeader("Content-Encoding"));
+    final RecordedRequest resent = backend.takeRequest(1000);
+    assertNull(resent.getHeader("Content-Encoding"));
+    assertEquals(utf8(body), resent.getBody().readUtf8());
+
+    // Compression stays off for the next uploads.
+    assertEquals(200, upload(scanBody()));
+    assertNull(backend.takeRequest(1000).getHeader("Content-Encoding"));
+    assertEquals(3, backend.requestCount(ApiEndpoint.LIVENESS_3D));
+  }
+
+  private static int upload(RequestBody body) throws IOException {
+    final Request request = ApiEndpoint.LIVENESS_3D.newRequest()
+        .post(body)
+        .build();
+    try (Response response = NetworkingHelpers.getApiClient().newCall(request).execute()) {
+      return response.code();
+    }
+  }
+
+  private static JsonStreamRequestBody scanBody() {
+    final StringBuilder faceScan = new StringBuilder();
+    for (int i = 0; i < 4096; i++) {
+      faceScan.append("c2NhbiBkYXRh");
+    }
+    return new JsonStreamRequestBody()
+        .put("faceScan", faceScan.toString())
+        .put("sessionId", "compression-test");
+  }
+
+  private static String utf8(JsonStreamRequestBody body) throws IOException {
+    final Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    return buffer.readUtf8();
+  }
+}
@@ -0,0 +1,130 @@
+package com.capitual.processors;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the cold path of {@link Config}: each run loads it in a fresh class
+ * loader, so the class and everything it pulls in is loaded from scratch, as
+ * on the first bridge call after app start.
+ *
+ * <p>"Before" replays the class initializer this module used to have, which
+ * built the customization three times while loading Config. "After" is loading
+ * Config as it is now; the customization build it no longer does is reported
+ * separately, since it now runs the first time a theme is applied.
+ *
+ * <p>From the android directory:
+ *
+ * <pre>
+ * ./gradlew configStartupBenchmark -Pargs="runs=30"
+ * </pre>
+ */
+public final class ConfigStartupBenchmark {
+  private static final String CONFIG = "com.capitual.processors.Config";
+
+  public static void main(String[] args) throws Exception {
+    int runs = 20;
+    for (String arg : args) {
+      for (String option : arg.trim().split("\\s+")) {
+        if (option.startsWith("runs=")) {
+          runs = Integer.parseInt(option.substring("runs=".length()));
+        }
+      }
+    }
+    final URL[] classpath = classpath();
+
+    final long[] before = new long[runs];
+    final long[] after = new long[runs];
+    final long[] firstCustomization = new long[runs];
+    int faceTecClassesBefore = 0;
+    int faceTecClassesAfter = 0;
+    for (int run = 0; run < runs; run++) {
+      final RecordingClassLoader eager = new RecordingClassLoader(classpath);
+      long start = System.nanoTime();
+      final Class<?> eagerConfig = Class.forName(CONFIG, true, eager);
+      final Method retrieve = eagerConfig.getMethod("retrieveConfigurationWizardCustomization");
+      for (int build = 0; build < 3; build++) {
+        retrieve.invoke(null);
+      }
+      before[run] = System.nanoTime() - start;
+      faceTecClassesBefore = eager.countLoaded("com.facetec.");
+
+      final RecordingClassLoader lazy = new RecordingClassLoader(classpath);
+      start = System.nanoTime();
+      final Class<?> lazyConfig = Class.forName(CONFIG, true, lazy);
+      after[run] = System.nanoTime() - start;
+      faceTecClassesAfter = lazy.countLoaded("com.facetec.");
+
+      start = System.nanoTime();
+      lazyConfig.getMethod("getCurrentCustomization").invoke(null);
+      firstCustomization[run] = System.nanoTime() - start;
+    }
+
+    System.out.printf(Locale.ROOT, "Config cold load over %d runs, median (min - max):%n", runs);
+    print("Before, eager customizations", before, faceTecClassesBefore);
+    print("After, lazy customizations", after, faceTecClassesAfter);
+    print("First getCurrentCustomization", firstCustomization, -1);
+  }
+
+  private static void print(String label, long[] nanos, int faceTecClasses) {
+    final long[] sorted = Arrays.copyOf(nanos, nanos.length);
+    Arrays.sort(sorted);
+    System.out.printf(Locale.ROOT, "  %-32s %8.2f ms (%.2f - %.2f)%s%n", label, millis(sorted[sorted.length / 2]),
+        millis(sorted[0]), millis(sorted[sorted.length - 1]),
+        faceTecClasses < 0 ? "" : ", " + faceTecClasses + " FaceTec classes loaded");
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static URL[] classpath() throws MalformedURLException {
+    final List<URL> urls = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        urls.add(new File(entry).toURI().toURL());
+      }
+    }
+    return urls.toArray(new URL[0]);
+  }
+
+  /**
+   * Loads the module, its dependencies and the FaceTec SDK anew, and records
+   * every class it defines. JDK classes still come from the parent.
+   */
+  private static final class RecordingClassLoader extends URLClassLoader {
+    private final List<String> loaded = new ArrayList<>();
+
+    RecordingClassLoader(URL[] classpath) {
+      super(classpath, ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      final Class<?> loadedClass = super.findClass(name);
+      synchronized (loaded) {
+        loaded.add(name);
+      }
+      return loadedClass;
+    }
+
+    int countLoaded(String prefix) {
+      int count = 0;
+      synchronized (loaded) {
+        for (String name : loaded) {
+          if (name.startsWith(prefix)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * {@link DeferredUploadQueue} picking up, after a restart, the journal a
+ * previous process left behind, against {@link FakeCapFaceBackend}. Records
+ * that expired or were sealed with another install's key are dropped, and
+ * nothing is written to the journal in the clear.
+ *
+ * <p>The queue is process-wide and opens once, so the whole lifecycle is a
+ * single test and no other test may start the queue.
+ */
+public class DeferredUploadQueueTest {
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private final JournalCipher cipher = newCipher();
+
+  @Rule
+  public final TemporaryFolder filesDir = new TemporaryFolder();
+
+  private FakeCapFaceBackend backend;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("deferred-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    backend.close();
+  }
+
+  @Test
+  public void replaysJournalAfterRestart() throws Exception {
+    final ByteString uploaded = record("uploaded-before-restart");
+    final ByteString first = record("first");
+    final ByteString second = record("second");
+    final long now = System.currentTimeMillis();
+    final ByteString[] sealed = {
+        seal(cipher, now, uploaded),
+        seal(cipher, now - DeferredUploadQueue.MAX_RECORD_AGE_MILLIS - 1000, record("expired")),
+        seal(cipher, now, first),
+        seal(newCipher(), now, record("previous-install")),
+        seal(cipher, now, second),
+    };
+    final File journal = new File(filesDir.getRoot(), "capface-uploads.journal");
+    final File cursor = new File(filesDir.getRoot(), "capface-uploads.cursor");
+    try (BufferedSink sink = Okio.buffer(Okio.sink(journal))) {
+      for (ByteString record : sealed) {
+        sink.writeInt(record.size());
+        sink.write(record);
+      }
+      // A record the previous process died while writing.
+      sink.writeInt(512);
+      sink.writeUtf8("{\"sessionId\":");
+    }
+    try (BufferedSink sink = Okio.buffer(Okio.sink(cursor))) {
+      sink.writeLong(4 + sealed[0].size());
+    }
+
+    DeferredUploadQueue.start(filesDir.getRoot(), cipher);
+
+    final RecordedRequest replayed = backend.takeRequest(TIMEOUT_MILLIS);
+    assertNotNull("The journal was not replayed", replayed);
+    assertEquals("/session-artifacts", replayed.getPath());
+    assertEquals("{\"artifacts\":[" + first.utf8() + "," + second.utf8() + "]}", replayed.getBody().readUtf8());
+    awaitDeleted(journal);
+
+    // The queue keeps working on a fresh journal.
+    // The queue waits for the session request in flight, which leaves the
+    // new record on disk for a while.
+    final ByteString third = record("third");
+    backend.setLatency(ApiEndpoint.SESSION_TOKEN, 1000);
+    SessionCallRegistry.enqueue("deferred-test-session", ApiEndpoint.SESSION_TOKEN.newRequest().get().build(),
+        new Callback() {
+          @Override
+          public void onFailure(@NonNull Call call, @NonNull IOException e) {
+          }
+
+          @Override
+          public void onResponse(@NonNull Call call, @NonNull Response response) {
+            response.close();
+          }
+        });
+    DeferredUploadQueue.enqueue(third);
+    awaitWritten(journal);
+    try (BufferedSource written = Okio.buffer(Okio.source(journal))) {
+      assertFalse("The journal holds the record in the clear", written.readUtf8().contains("third"));
+    }
+
+    assertEquals("/session-token", backend.takeRequest(TIMEOUT_MILLIS).getPath());
+    final RecordedRequest enqueued = backend.takeRequest(TIMEOUT_MILLIS);
+    assertNotNull("The new record was not uploaded", enqueued);
+    assertEquals("{\"artifacts\":[" + third.utf8() + "]}", enqueued.getBody().readUtf8());
+    awaitDeleted(journal);
+    assertEquals(2, backend.requestCount(ApiEndpoint.SESSION_ARTIFACTS));
+  }
+
+  private static JournalCipher newCipher() {
+    final byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    return new JournalCipher(new SecretKeySpec(key, "AES"));
+  }
+
+  private static ByteString seal(JournalCipher cipher, long queuedAtMillis, ByteString record)
+      throws GeneralSecurityException {
+    return cipher.seal(new Buffer().writeLong(queuedAtMillis).write(record).readByteString());
+  }
+
+  private static ByteString record(String sessionId) {
+    return ByteString.encodeUtf8("{\"sessionId\":\"" + sessionId + "\",\"fields\":{\"auditTrailImage\":\"aW1hZ2U=\"}}");
+  }
+
+  private static void awaitWritten(File journal) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (journal.length() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue("The record was not written", journal.length() > 0);
+  }
+
+  /**
+   * Waits for the queue to reset its journal, which it does once every record
+   * is uploaded.
+   */
+  private static void awaitDeleted(File journal) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (journal.exists() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertFalse("The journal was not reset", journal.exists());
+  }
+}
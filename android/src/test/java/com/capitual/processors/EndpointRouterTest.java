@@ -0,0 +1,96 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+
+/**
+ * {@link EndpointRouter} ordering and skipping its base URLs, and
+ * {@link FailoverInterceptor} moving a request to the next one through the
+ * real API client, against two {@link FakeCapFaceBackend}s.
+ */
+public class EndpointRouterTest {
+  private FakeCapFaceBackend primary;
+  private FakeCapFaceBackend secondary;
+
+  @Before
+  public void setUp() throws IOException {
+    primary = new FakeCapFaceBackend().start();
+    secondary = new FakeCapFaceBackend().start();
+    Config.setUrl(primary.baseUrl());
+    Config.setDevice("router-test-device");
+    EndpointRouter.configure(primary.baseUrl(), Arrays.asList(secondary.baseUrl()));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    primary.close();
+    secondary.close();
+  }
+
+  @Test
+  public void keepsTheConfiguredOrderWithoutDuplicates() {
+    EndpointRouter.configure("https://a.example.com/api/", Arrays.asList(
+        "https://b.example.com", "not a url", "https://a.example.com/api/", null));
+    final EndpointRouter.Routes routes = EndpointRouter.routes();
+
+    assertEquals(2, routes.size());
+    assertEquals("https://a.example.com/api/session-token", routes.url(0, ApiEndpoint.SESSION_TOKEN).toString());
+    assertEquals("https://b.example.com/session-token", routes.url(1, ApiEndpoint.SESSION_TOKEN).toString());
+    // Unprobed base URLs are picked in the configured order.
+    assertEquals(HttpUrl.get("https://a.example.com/api/"), EndpointRouter.baseUrl());
+    assertEquals(HttpUrl.get("https://a.example.com/api/session-token"), EndpointRouter.url(ApiEndpoint.SESSION_TOKEN));
+
+    // Without base URLs, it falls back to the one of the config.
+    EndpointRouter.configure(null, null);
+    assertEquals(1, EndpointRouter.routes().size());
+    assertEquals(HttpUrl.get(primary.baseUrl()), EndpointRouter.baseUrl());
+  }
+
+  @Test
+  public void skipsAFailedBaseUrlForThatEndpointOnly() {
+    final EndpointRouter.Routes routes = EndpointRouter.routes();
+
+    routes.markFailed(0, ApiEndpoint.LIVENESS_3D);
+    assertEquals(1, routes.pick(ApiEndpoint.LIVENESS_3D, null));
+    assertEquals(0, routes.pick(ApiEndpoint.ENROLLMENT_3D, null));
+
+    // When every base URL failed, the best one is still tried.
+    routes.markFailed(1, ApiEndpoint.LIVENESS_3D);
+    assertEquals(0, routes.pick(ApiEndpoint.LIVENESS_3D, null));
+    assertEquals(-1, routes.pick(ApiEndpoint.LIVENESS_3D, new boolean[] { true, true }));
+
+    routes.markSucceeded(0, ApiEndpoint.LIVENESS_3D);
+    assertEquals(0, routes.pick(ApiEndpoint.LIVENESS_3D, new boolean[] { false, false }));
+    assertEquals(1, routes.pick(ApiEndpoint.LIVENESS_3D, new boolean[] { true, false }));
+  }
+
+  @Test
+  public void failsOverToTheNextBaseUrl() throws IOException {
+    // Every attempt is an outcome of the endpoint's breaker, so this uses an
+    // endpoint no other test calls.
+    primary.failNext(ApiEndpoint.ENROLLMENT_3D, FakeCapFaceBackend.Fault.HTTP_503, 1);
+
+    final okhttp3.Request request = ApiEndpoint.ENROLLMENT_3D.newRequest()
+        .post(new JsonStreamRequestBody().put("faceScan", "ZmFjZVNjYW4="))
+        .build();
+    try (Response response = NetworkingHelpers.getApiClient().newCall(request).execute()) {
+      assertEquals(200, response.code());
+      assertEquals(HttpUrl.get(secondary.baseUrl()).host(), response.request().url().host());
+      assertEquals(HttpUrl.get(secondary.baseUrl()).port(), response.request().url().port());
+    }
+
+    assertEquals(1, primary.requestCount(ApiEndpoint.ENROLLMENT_3D));
+    assertEquals(1, secondary.requestCount(ApiEndpoint.ENROLLMENT_3D));
+    // The connection kept warm is the one that answered.
+    assertEquals(HttpUrl.get(secondary.baseUrl()), EndpointRouter.lastUsedBaseUrl());
+  }
+}
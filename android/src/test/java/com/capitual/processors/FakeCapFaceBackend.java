@@ -0,0 +1,355 @@
+package com.capitual.processors;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+
+/**
+ * Local stand-in for the CapFace backend, on top of {@link MockWebServer}.
+ *
+ * <p>It answers every {@link ApiEndpoint} with the shapes the processors
+ * decode: {@code sessionToken} for the session token, {@code wasProcessed} and
+ * {@code scanResultBlob} for the scan endpoints. Uploads may be gzip or deflate
+ * compressed, like {@link CompressionInterceptor} sends them. On top of that it
+ * can add latency, throttle both directions of a connection, answer with
+ * errors and drop connections, so retries, timeouts and streaming can be
+ * exercised on a plain JVM.
+ *
+ * <pre>
+ * FakeCapFaceBackend backend = new FakeCapFaceBackend().start();
+ * backend.setLatency(ApiEndpoint.LIVENESS_3D, 800);
+ * backend.failNext(ApiEndpoint.LIVENESS_3D, Fault.HTTP_503, 2);
+ * EndpointRouter.configure(backend.baseUrl(), null);
+ * </pre>
+ */
+public final class FakeCapFaceBackend implements Closeable {
+  public enum Fault {
+    HTTP_429,
+    HTTP_500,
+    HTTP_503,
+    /** 200 with {@code wasProcessed: false}, or without a session token. */
+    NOT_PROCESSED,
+    /** 200 with a body that is not JSON. */
+    MALFORMED,
+    /** The request is read and the connection closed without an answer. */
+    DROP_AFTER_REQUEST,
+    /** The answer is cut in the middle of its body. */
+    DROP_DURING_RESPONSE,
+    /** The request is read and never answered, until the client times out. */
+    NO_RESPONSE
+  }
+
+  private static final String JSON = "application/json; charset=utf-8";
+
+  private final MockWebServer server = new MockWebServer();
+  private final Random random = new Random(42);
+  private final Map<ApiEndpoint, Long> latencyMillis = new EnumMap<>(ApiEndpoint.class);
+  private final Map<ApiEndpoint, Queue<Fault>> faults = new EnumMap<>(ApiEndpoint.class);
+  private final Map<ApiEndpoint, AtomicInteger> requestCounts = new EnumMap<>(ApiEndpoint.class);
+  private final Queue<SocketPolicy> connectionFaults = new ArrayDeque<>();
+  private long defaultLatencyMillis = 0;
+  private long bytesPerSecond = 0;
+  private int scanResultBlobBytes = 2048;
+  private boolean rejectsCompression = false;
+
+  public FakeCapFaceBackend() {
+    for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+      faults.put(endpoint, new ArrayDeque<Fault>());
+      requestCounts.put(endpoint, new AtomicInteger());
+    }
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return answer(request);
+      }
+
+      @Override
+      public MockResponse peek() {
+        // Read before the request itself, so only what applies to any path
+        // can go here: dropped uploads and the upload throttle.
+        return connectionResponse();
+      }
+    });
+  }
+
+  public FakeCapFaceBackend start() throws IOException {
+    server.start();
+    return this;
+  }
+
+  /**
+   * The base URL to hand to {@code initializeSdk} or {@link EndpointRouter}.
+   */
+  public String baseUrl() {
+    return server.url("/").toString();
+  }
+
+  public MockWebServer server() {
+    return server;
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+
+  /**
+   * Delays the response headers of every endpoint without its own latency.
+   */
+  public synchronized FakeCapFaceBackend setLatency(long millis) {
+    defaultLatencyMillis = millis;
+    return this;
+  }
+
+  public synchronized FakeCapFaceBackend setLatency(ApiEndpoint endpoint, long millis) {
+    latencyMillis.put(endpoint, millis);
+    return this;
+  }
+
+  /**
+   * Throttles uploads and answers to {@code bytesPerSecond}, or lifts the
+   * throttle when it is 0.
+   */
+  public synchronized FakeCapFaceBackend setBandwidth(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    return this;
+  }
+
+  /**
+   * Size of the scan result blobs, in bytes before base64.
+   */
+  public synchronized FakeCapFaceBackend setScanResultBlobBytes(int bytes) {
+    scanResultBlobBytes = bytes;
+    return this;
+  }
+
+  /**
+   * Answers compressed uploads with {@code 415 Unsupported Media Type}.
+   */
+  public synchronized FakeCapFaceBackend setRejectsCompression(boolean rejectsCompression) {
+    this.rejectsCompression = rejectsCompression;
+    return this;
+  }
+
+  /**
+   * Answers the next {@code times} requests to {@code endpoint} with
+   * {@code fault}, after any faults already queued.
+   */
+  public synchronized FakeCapFaceBackend failNext(ApiEndpoint endpoint, Fault fault, int times) {
+    for (int i = 0; i < times; i++) {
+      faults.get(endpoint).add(fault);
+    }
+    return this;
+  }
+
+  /**
+   * Drops the connection of the next {@code times} requests, whatever their
+   * endpoint: once the request is read, or halfway through the upload when
+   * {@code duringUpload} is set and the request has a body.
+   */
+  public synchronized FakeCapFaceBackend dropNextConnections(int times, boolean duringUpload) {
+    for (int i = 0; i < times; i++) {
+      connectionFaults.add(duringUpload ? SocketPolicy.DISCONNECT_DURING_REQUEST_BODY
+          : SocketPolicy.DISCONNECT_AFTER_REQUEST);
+    }
+    return this;
+  }
+
+  /**
+   * Requests that reached {@code endpoint}, dropped and failed ones included.
+   */
+  public int requestCount(ApiEndpoint endpoint) {
+    return requestCounts.get(endpoint).get();
+  }
+
+  /**
+   * The next request the server received, in arrival order.
+   */
+  public RecordedRequest takeRequest(long timeoutMillis) throws InterruptedException {
+    return server.takeRequest(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized MockResponse connectionResponse() {
+    // The server reads the upload with this policy before dispatching, so a
+    // drop during the upload has to be announced here.
+    return throttled(new MockResponse()
+        .setSocketPolicy(connectionFaults.peek() == SocketPolicy.DISCONNECT_DURING_REQUEST_BODY
+            ? SocketPolicy.DISCONNECT_DURING_REQUEST_BODY
+            : SocketPolicy.KEEP_OPEN));
+  }
+
+  private synchronized MockResponse answer(RecordedRequest request) {
+    final ApiEndpoint endpoint = endpointOf(request.getPath());
+    if (endpoint != null) {
+      requestCounts.get(endpoint).incrementAndGet();
+    }
+
+    if (connectionFaults.poll() != null) {
+      // A drop during the upload already closed the socket. Any other drop,
+      // or one queued for a request without a body, happens now.
+      return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+    }
+
+    if (endpoint == null) {
+      // Route probes and preconnects hit the base URL.
+      return "HEAD".equals(request.getMethod()) ? new MockResponse() : json(404, error("Not found."));
+    }
+
+    final Long endpointLatency = latencyMillis.get(endpoint);
+    final MockResponse response = respond(endpoint, request, faults.get(endpoint).poll());
+    return throttled(response)
+        .setHeadersDelay(endpointLatency != null ? endpointLatency : defaultLatencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private MockResponse respond(ApiEndpoint endpoint, RecordedRequest request, Fault fault) {
+    if (fault != null) {
+      switch (fault) {
+        case HTTP_429:
+          return json(429, error("Too many requests.")).setHeader("Retry-After", "1");
+        case HTTP_500:
+          return json(500, error("Internal server error."));
+        case HTTP_503:
+          return json(503, error("Service unavailable."));
+        case MALFORMED:
+          return new MockResponse().setHeader("Content-Type", JSON).setBody("<html>Bad gateway</html>");
+        case DROP_AFTER_REQUEST:
+          return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+        case DROP_DURING_RESPONSE:
+          return json(200, scanResult(endpoint, true)).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        case NO_RESPONSE:
+          return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+        case NOT_PROCESSED:
+          return json(200, scanResult(endpoint, false));
+      }
+    }
+
+    if (endpoint == ApiEndpoint.SESSION_TOKEN) {
+      return "GET".equals(request.getMethod()) ? json(200, scanResult(endpoint, true)) : json(405, error("GET only."));
+    }
+    if (!"POST".equals(request.getMethod())) {
+      return json(405, error("POST only."));
+    }
+
+    final String encoding = request.getHeader("Content-Encoding");
+    if (encoding != null && rejectsCompression) {
+      return json(415, error("Compressed uploads are not supported."));
+    }
+    final JsonObject body;
+    try {
+      // Decodes a copy, so the recorded request keeps its body.
+      final JsonElement parsed = JsonParser.parseString(decode(request.getBody().clone(), encoding));
+      body = parsed.isJsonObject() ? parsed.getAsJsonObject() : null;
+    } catch (RuntimeException | IOException e) {
+      return json(400, error("The body is not valid JSON."));
+    }
+    final String missingField = missingField(endpoint, body);
+    if (missingField != null) {
+      return json(400, error("Missing " + missingField + "."));
+    }
+    return json(200, scanResult(endpoint, true));
+  }
+
+  private static String missingField(ApiEndpoint endpoint, JsonObject body) {
+    if (body == null) {
+      return "body";
+    }
+    switch (endpoint) {
+      case SESSION_ARTIFACTS:
+        return body.has("artifacts") ? null : "artifacts";
+      case IDSCAN_ONLY:
+      case MATCH_3D_2D_IDSCAN:
+        return body.has("idScan") ? null : "idScan";
+      default:
+        return body.has("faceScan") ? null : "faceScan";
+    }
+  }
+
+  private String scanResult(ApiEndpoint endpoint, boolean wasProcessed) {
+    final JsonObject result = new JsonObject();
+    if (endpoint == ApiEndpoint.SESSION_TOKEN) {
+      result.addProperty("success", wasProcessed);
+      if (wasProcessed) {
+        result.addProperty("sessionToken", base64(256));
+      } else {
+        result.addProperty("errorMessage", "Could not create a session token.");
+      }
+      return result.toString();
+    }
+    result.addProperty("success", wasProcessed);
+    result.addProperty("wasProcessed", wasProcessed);
+    result.addProperty("error", false);
+    result.addProperty("scanResultBlob", base64(scanResultBlobBytes));
+    return result.toString();
+  }
+
+  private static String error(String message) {
+    final JsonObject error = new JsonObject();
+    error.addProperty("error", true);
+    error.addProperty("errorMessage", message);
+    return error.toString();
+  }
+
+  private String base64(int bytes) {
+    final byte[] data = new byte[bytes];
+    random.nextBytes(data);
+    return Base64.getEncoder().encodeToString(data);
+  }
+
+  private static MockResponse json(int code, String body) {
+    return new MockResponse()
+        .setResponseCode(code)
+        .setHeader("Content-Type", JSON)
+        .setBody(body);
+  }
+
+  private MockResponse throttled(MockResponse response) {
+    if (bytesPerSecond > 0) {
+      // Ten steps a second keep the transfer smooth.
+      response.throttleBody(Math.max(1, bytesPerSecond / 10), 100, TimeUnit.MILLISECONDS);
+    }
+    return response;
+  }
+
+  private static String decode(Buffer body, String encoding) throws IOException {
+    if (CompressionInterceptor.GZIP.equals(encoding)) {
+      return Okio.buffer(new GzipSource(body)).readUtf8();
+    }
+    if (CompressionInterceptor.DEFLATE.equals(encoding)) {
+      return Okio.buffer(new InflaterSource(body, new Inflater())).readUtf8();
+    }
+    return body.readUtf8();
+  }
+
+  private static ApiEndpoint endpointOf(String path) {
+    final int query = path.indexOf('?');
+    final String pathOnly = query == -1 ? path : path.substring(0, query);
+    for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+      if (pathOnly.endsWith(endpoint.path)) {
+        return endpoint;
+      }
+    }
+    return null;
+  }
+}
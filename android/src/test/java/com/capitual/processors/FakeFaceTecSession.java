@@ -0,0 +1,176 @@
+package com.capitual.processors;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the FaceTec session activity: after a simulated capture it
+ * hands the processor synthetic scans of the configured sizes, and walks a
+ * photo ID match from the face scan to the ID scan like the SDK does.
+ */
+final class FakeFaceTecSession implements FaceTecBridge.SessionLauncher {
+  /**
+   * Sizes of the synthetic scans, in bytes before base64. The defaults are
+   * close to what FaceTec produces on a mid-range device.
+   */
+  static final class ScanSizes {
+    int faceScanBytes = 150 * 1024;
+    int auditTrailImageBytes = 30 * 1024;
+    int lowQualityAuditTrailImageBytes = 8 * 1024;
+    int idScanBytes = 120 * 1024;
+    int idScanImageBytes = 250 * 1024;
+  }
+
+  private final ScheduledExecutorService camera = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+      Thread thread = new Thread(runnable, "Fake FaceTec camera");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private final ScanSizes sizes;
+  private final long captureMillis;
+  private final boolean isCompleted;
+
+  /**
+   * @param captureMillis time the user spends in front of the camera, per scan.
+   * @param isCompleted   false to end every scan as cancelled by the user.
+   */
+  FakeFaceTecSession(ScanSizes sizes, long captureMillis, boolean isCompleted) {
+    this.sizes = sizes;
+    this.captureMillis = captureMillis;
+    this.isCompleted = isCompleted;
+  }
+
+  @Override
+  public void launch(@Nullable Context context, @NonNull final Processor processor, @NonNull String sessionToken) {
+    if (processor instanceof FaceTecBridge.FaceScanProcessor) {
+      captureFace((FaceTecBridge.FaceScanProcessor) processor);
+    } else {
+      captureID((FaceTecBridge.IDScanProcessor) processor);
+    }
+  }
+
+  void shutdown() {
+    camera.shutdownNow();
+  }
+
+  private void captureFace(final FaceTecBridge.FaceScanProcessor processor) {
+    camera.schedule(new Runnable() {
+      @Override
+      public void run() {
+        processor.processFaceScan(faceScan(), new Callback() {
+          @Override
+          public boolean proceedToNextStep(String scanResultBlob) {
+            if (processor instanceof FaceTecBridge.IDScanProcessor) {
+              captureID((FaceTecBridge.IDScanProcessor) processor);
+            }
+            return true;
+          }
+        });
+      }
+    }, captureMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void captureID(final FaceTecBridge.IDScanProcessor processor) {
+    camera.schedule(new Runnable() {
+      @Override
+      public void run() {
+        processor.processIDScan(idScan(), new Callback());
+      }
+    }, captureMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private FaceTecBridge.FaceScan faceScan() {
+    // Each session owns its strings, like the real results do.
+    final String faceScan = base64(sizes.faceScanBytes);
+    final String auditTrailImage = base64(sizes.auditTrailImageBytes);
+    final String lowQualityAuditTrailImage = base64(sizes.lowQualityAuditTrailImageBytes);
+    return new FaceTecBridge.FaceScan() {
+      @Override
+      public boolean isCompleted() {
+        return isCompleted;
+      }
+
+      @Override
+      public String getFaceScanBase64() {
+        return faceScan;
+      }
+
+      @Override
+      public String getAuditTrailImage() {
+        return auditTrailImage;
+      }
+
+      @Override
+      public String getLowQualityAuditTrailImage() {
+        return lowQualityAuditTrailImage;
+      }
+    };
+  }
+
+  private FaceTecBridge.IDScan idScan() {
+    final String idScan = base64(sizes.idScanBytes);
+    final List<String> frontImages = new ArrayList<>();
+    frontImages.add(base64(sizes.idScanImageBytes));
+    final List<String> backImages = new ArrayList<>();
+    backImages.add(base64(sizes.idScanImageBytes));
+    return new FaceTecBridge.IDScan() {
+      @Override
+      public boolean isCompleted() {
+        return isCompleted;
+      }
+
+      @Override
+      public String getIDScanBase64() {
+        return idScan;
+      }
+
+      @Override
+      public List<String> getFrontImagesCompressedBase64() {
+        return frontImages;
+      }
+
+      @Override
+      public List<String> getBackImagesCompressedBase64() {
+        return backImages;
+      }
+    };
+  }
+
+  private static String base64(int bytes) {
+    final byte[] data = new byte[bytes];
+    ThreadLocalRandom.current().nextBytes(data);
+    return Base64.getEncoder().encodeToString(data);
+  }
+
+  /**
+   * The SDK side of a scan: progress is dropped and every step succeeds.
+   */
+  private static class Callback implements FaceTecBridge.ScanResultCallback {
+    @Override
+    public void uploadProgress(float uploadProgressPercent) {
+    }
+
+    @Override
+    public boolean proceedToNextStep(String scanResultBlob) {
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * {@link HedgedCall} and its {@link HedgedCall.Policy}, with a plain client
+ * against a {@link MockWebServer} that answers each request in turn.
+ */
+public class HedgedCallTest {
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private final MockWebServer server = new MockWebServer();
+  private final OkHttpClient client = new OkHttpClient();
+  private final HedgedCall.Policy policy = new HedgedCall.Policy();
+
+  @Before
+  public void setUp() throws IOException {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void hedgesASlowCallAndTakesTheFirstAnswer() throws Exception {
+    server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(3, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody("hedge"));
+    policy.configure(true, 100L);
+
+    final long startNanos = System.nanoTime();
+    final Outcome outcome = enqueue();
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    assertEquals("hedge", outcome.body);
+    assertTrue(outcome.wasHedge);
+    assertEquals(2, server.getRequestCount());
+    assertTrue("Answered after " + elapsedMillis + "ms", elapsedMillis < 3000);
+    assertTrue("The slow copy was not cancelled", outcome.otherWasCancelled);
+  }
+
+  @Test
+  public void sendsOneCopyWhenDisabled() throws Exception {
+    server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+    policy.configure(false, 50L);
+
+    final Outcome outcome = enqueue();
+
+    assertEquals("slow", outcome.body);
+    assertFalse(outcome.wasHedge);
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void delaysByTheRollingP90() {
+    assertEquals(HedgedCall.Policy.DEFAULT_DELAY_MILLIS, policy.delayMillis());
+    for (int i = 1; i < HedgedCall.Policy.MIN_LATENCY_SAMPLES; i++) {
+      policy.recordLatency(i);
+    }
+    assertEquals(HedgedCall.Policy.DEFAULT_DELAY_MILLIS, policy.delayMillis());
+
+    for (int i = HedgedCall.Policy.MIN_LATENCY_SAMPLES; i <= 10; i++) {
+      policy.recordLatency(i * 10);
+    }
+    // 1, 2, 3, 4, 50 ... 100: the 9th of 10.
+    assertEquals(90, policy.delayMillis());
+
+    // Only the last samples count.
+    for (int i = 0; i < HedgedCall.Policy.LATENCY_SAMPLES; i++) {
+      policy.recordLatency(7);
+    }
+    assertEquals(7, policy.delayMillis());
+
+    policy.configure(true, 250L);
+    assertEquals(250, policy.delayMillis());
+  }
+
+  @Test
+  public void hedgesAtMostOneCallInTen() {
+    assertTrue(policy.tryHedge());
+    int hedges = 0;
+    for (int i = 0; i < 100; i++) {
+      policy.onCall();
+      if (policy.tryHedge()) {
+        hedges++;
+      }
+    }
+    assertTrue("Hedged " + hedges + " of 100 calls", hedges <= 100 * HedgedCall.Policy.MAX_HEDGE_RATIO);
+  }
+
+  private Outcome enqueue() throws InterruptedException {
+    final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+    final Request request = new Request.Builder().url(server.url("/session-token")).get().build();
+    HedgedCall.enqueue(client, request, policy, new Callback() {
+      @Override
+      public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        outcomes.add(new Outcome(null, false, false));
+      }
+
+      @Override
+      public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+        final boolean wasHedge = call.request().tag(HedgedCall.Hedge.class) != null;
+        boolean otherWasCancelled = false;
+        for (Call running : client.dispatcher().runningCalls()) {
+          otherWasCancelled |= running != call && running.isCanceled();
+        }
+        outcomes.add(new Outcome(response.body().string(), wasHedge, otherWasCancelled));
+      }
+    });
+    final Outcome outcome = outcomes.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertNotNull("The hedged call never settled", outcome);
+    assertNull("The callback ran twice", outcomes.poll(200, TimeUnit.MILLISECONDS));
+    return outcome;
+  }
+
+  private static final class Outcome {
+    final String body;
+    final boolean wasHedge;
+    final boolean otherWasCancelled;
+
+    Outcome(String body, boolean wasHedge, boolean otherWasCancelled) {
+      this.body = body;
+      this.wasHedge = wasHedge;
+      this.otherWasCancelled = otherWasCancelled;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * The announced length of {@link JsonStreamRequestBody} against the bytes it
+ * writes, and the JSON those bytes hold.
+ */
+public class JsonStreamRequestBodyTest {
+  private FakeCapFaceBackend backend;
+
+  @After
+  public void tearDown() throws IOException {
+    if (backend != null) {
+      backend.close();
+    }
+  }
+
+  @Test
+  public void lengthMatchesAsciiBody() throws IOException {
+    assertLengthMatches(new JsonStreamRequestBody()
+        .put("faceScan", "c2NhbiBkYXRh")
+        .put("sessionId", "7c2b0f5e"));
+  }
+
+  @Test
+  public void lengthMatchesEscapedAndMultiByteStrings() throws IOException {
+    final JsonStreamRequestBody body = new JsonStreamRequestBody()
+        .put("quotes", "say \"hi\" \\ bye")
+        .put("control", "line\nbreak\ttab\u0001\u001f")
+        .put("accents", "ação, über, 日本語")
+        .put("emoji", "face 😀 scan");
+
+    assertLengthMatches(body);
+    final JsonObject parsed = parse(body);
+    assertEquals("say \"hi\" \\ bye", parsed.get("quotes").getAsString());
+    assertEquals("line\nbreak\ttab\u0001\u001f", parsed.get("control").getAsString());
+    assertEquals("ação, über, 日本語", parsed.get("accents").getAsString());
+    assertEquals("face 😀 scan", parsed.get("emoji").getAsString());
+  }
+
+  @Test
+  public void lengthMatchesNestedValues() throws IOException {
+    final Map<String, Object> data = new LinkedHashMap<>();
+    data.put("name", "Joana");
+    data.put("age", 31.0);
+    data.put("ratio", 0.25);
+    data.put("verified", true);
+    data.put("missing", null);
+    data.put("tags", Arrays.<Object>asList("a", 2.0, false));
+    final JsonStreamRequestBody body = new JsonStreamRequestBody()
+        .put("data", data)
+        .put("left out", null);
+
+    assertLengthMatches(body);
+    final JsonObject parsed = parse(body);
+    assertFalse(parsed.has("left out"));
+    final JsonObject parsedData = parsed.getAsJsonObject("data");
+    assertEquals("31", parsedData.get("age").toString());
+    assertEquals(0.25, parsedData.get("ratio").getAsDouble(), 0);
+    assertEquals("[\"a\",2,false]", parsedData.get("tags").toString());
+    assertEquals("null", parsedData.get("missing").toString());
+  }
+
+  @Test
+  public void lengthFollowsLaterFields() throws IOException {
+    final JsonStreamRequestBody body = new JsonStreamRequestBody().put("faceScan", "c2Nhbg==");
+    final long firstLength = body.contentLength();
+
+    body.put("auditTrailImage", "aW1hZ2U=");
+
+    assertEquals(firstLength + ",\"auditTrailImage\":\"aW1hZ2U=\"".length(), body.contentLength());
+    assertLengthMatches(body);
+  }
+
+  @Test
+  public void serverReceivesAnnouncedLength() throws Exception {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("json-body-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+    final JsonStreamRequestBody body = new JsonStreamRequestBody()
+        .put("faceScan", "c2Nhbg==")
+        .put("data", "ação 😀");
+
+    final Request request = ApiEndpoint.MATCH_3D_3D.newRequest()
+        .post(body)
+        .build();
+    try (Response response = NetworkingHelpers.getApiClient().newCall(request).execute()) {
+      assertEquals(200, response.code());
+    }
+
+    final RecordedRequest recorded = backend.takeRequest(1000);
+    assertEquals(String.valueOf(body.contentLength()), recorded.getHeader("Content-Length"));
+    assertEquals(body.contentLength(), recorded.getBodySize());
+  }
+
+  private static void assertLengthMatches(JsonStreamRequestBody body) throws IOException {
+    final Buffer written = new Buffer();
+    body.writeTo(written);
+    assertEquals(written.size(), body.contentLength());
+  }
+
+  private static JsonObject parse(JsonStreamRequestBody body) throws IOException {
+    final Buffer written = new Buffer();
+    body.writeTo(written);
+    return JsonParser.parseString(written.readUtf8()).getAsJsonObject();
+  }
+}
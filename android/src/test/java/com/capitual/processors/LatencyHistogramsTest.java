@@ -0,0 +1,88 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The bucket math of {@link LatencyHistograms}: every value falls in the one
+ * bucket whose bounds hold it, buckets are at most 12.5% wide, and the
+ * percentiles read back from them are within that error.
+ */
+public class LatencyHistogramsTest {
+  @Test
+  public void bucketsHoldTheirValues() {
+    for (long value = 0; value <= LatencyHistograms.MAX_VALUE_MICROS; value = next(value)) {
+      final int index = LatencyHistograms.bucketIndex(value);
+      assertTrue(value + " is above its bucket", value <= LatencyHistograms.bucketUpperBound(index));
+      if (index > 0) {
+        assertTrue(value + " belongs to the bucket below", value > LatencyHistograms.bucketUpperBound(index - 1));
+      }
+    }
+  }
+
+  @Test
+  public void bucketsAreContiguousAndNarrow() {
+    for (int index = 1; index < LatencyHistograms.BUCKETS; index++) {
+      final long lowerBound = LatencyHistograms.bucketUpperBound(index - 1) + 1;
+      final long upperBound = LatencyHistograms.bucketUpperBound(index);
+      assertEquals(index, LatencyHistograms.bucketIndex(lowerBound));
+      assertEquals(index, LatencyHistograms.bucketIndex(upperBound));
+      assertTrue("Bucket " + index + " is too wide",
+          upperBound - lowerBound + 1 <= Math.max(1, lowerBound / LatencyHistograms.SUB_BUCKETS));
+    }
+    assertEquals(LatencyHistograms.BUCKETS - 1, LatencyHistograms.bucketIndex(LatencyHistograms.MAX_VALUE_MICROS));
+    assertEquals(LatencyHistograms.MAX_VALUE_MICROS, LatencyHistograms.bucketUpperBound(LatencyHistograms.BUCKETS - 1));
+  }
+
+  @Test
+  public void readsPercentilesWithinTheBucketError() {
+    final LatencyHistograms.Histogram histogram = new LatencyHistograms.Histogram();
+    // 1 ms to 1 s, once each.
+    for (long millis = 1; millis <= 1000; millis++) {
+      histogram.record(millis * 1000);
+    }
+    final long[] counts = histogram.drain();
+
+    assertWithinBucketError(500000, LatencyHistograms.percentileMicros(counts, 1000, 1000000, 0.5));
+    assertWithinBucketError(900000, LatencyHistograms.percentileMicros(counts, 1000, 1000000, 0.9));
+    assertWithinBucketError(990000, LatencyHistograms.percentileMicros(counts, 1000, 1000000, 0.99));
+    // Never above the largest value recorded.
+    assertEquals(1000000, LatencyHistograms.percentileMicros(counts, 1000, 1000000, 1));
+
+    // Draining starts over.
+    long left = 0;
+    for (long count : histogram.drain()) {
+      left += count;
+    }
+    assertEquals(0, left);
+  }
+
+  @Test
+  public void clampsValuesOutOfRange() {
+    final LatencyHistograms.Histogram histogram = new LatencyHistograms.Histogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    final long[] counts = histogram.drain();
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[LatencyHistograms.BUCKETS - 1]);
+  }
+
+  private static void assertWithinBucketError(long expected, long actual) {
+    assertTrue(actual + " is not within 12.5% of " + expected,
+        actual >= expected && actual <= expected + expected / LatencyHistograms.SUB_BUCKETS);
+  }
+
+  /**
+   * Every small value, then about 64 values per power of two.
+   */
+  private static long next(long value) {
+    if (value < 4096) {
+      return value + 1;
+    }
+    final long step = Long.highestOneBit(value) / 64;
+    return value + Math.max(1, step - 1);
+  }
+}
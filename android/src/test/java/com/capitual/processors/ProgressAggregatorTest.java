@@ -0,0 +1,173 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * {@link ProgressAggregator} coalescing updates, and {@link ProgressRequestBody}
+ * counting every byte a body writes exactly once.
+ */
+public class ProgressAggregatorTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void coalescesUpdatesByRate() {
+    final Updates updates = new Updates();
+    final ProgressAggregator progress = new ProgressAggregator(10000, updates, 10, 0);
+
+    for (int i = 0; i < 10000; i++) {
+      progress.onBytesWritten(1);
+    }
+    progress.finish();
+
+    // A tight loop takes far less than the 100 ms between updates.
+    assertTrue("Sent " + updates.size() + " updates", updates.size() <= 3);
+    updates.assertLast(10000, 10000);
+  }
+
+  @Test
+  public void coalescesUpdatesByFraction() {
+    final Updates updates = new Updates();
+    final ProgressAggregator progress = new ProgressAggregator(1000, updates, Integer.MAX_VALUE, 0.1f);
+
+    for (int i = 0; i < 1000; i++) {
+      progress.onBytesWritten(1);
+    }
+    progress.finish();
+
+    assertTrue("Sent " + updates.size() + " updates", updates.size() <= 11);
+    for (int i = 1; i < updates.size(); i++) {
+      assertTrue(updates.bytesWritten.get(i) - updates.bytesWritten.get(i - 1) >= 100
+          || updates.bytesWritten.get(i) == 1000);
+    }
+    updates.assertLast(1000, 1000);
+  }
+
+  @Test
+  public void countsEveryWriteExactlyOnce() throws IOException {
+    final MixedWritesBody body = new MixedWritesBody();
+    final Updates updates = new Updates();
+    final Buffer written = new Buffer();
+
+    new ProgressRequestBody(body, updates).writeTo(written);
+
+    assertEquals(body.contentLength(), written.size());
+    updates.assertLast(written.size(), body.contentLength());
+  }
+
+  @Test
+  public void finishesWithTheRealTotalOfAnEstimate() {
+    final Updates updates = new Updates();
+    final ProgressAggregator progress = new ProgressAggregator(1000, updates, Integer.MAX_VALUE, 0);
+
+    progress.onBytesWritten(600);
+    progress.onBytesWritten(600);
+    assertEquals(1200, (long) updates.totalBytes.get(1));
+    progress.finish();
+
+    updates.assertLast(1200, 1200);
+    assertEquals(2, updates.size());
+
+    final Updates shorter = new Updates();
+    final ProgressAggregator overestimated = new ProgressAggregator(1000, shorter, Integer.MAX_VALUE, 0);
+    overestimated.onBytesWritten(300);
+    overestimated.finish();
+    assertEquals(1000, (long) shorter.totalBytes.get(0));
+    shorter.assertLast(300, 300);
+  }
+
+  @Test
+  public void writesStraightIntoTheConnectionSink() throws IOException {
+    final Buffer wire = new Buffer();
+    final List<Long> wireWrites = new ArrayList<>();
+    final BufferedSink connectionSink = Okio.buffer(new ForwardingSink(wire) {
+      @Override
+      public void write(Buffer source, long byteCount) throws IOException {
+        wireWrites.add(byteCount);
+        super.write(source, byteCount);
+      }
+    });
+    final byte[] payload = new byte[100 * 1024];
+    final RequestBody body = RequestBody.create(MediaType.parse("application/octet-stream"), payload);
+
+    new ProgressRequestBody(body, new Updates()).writeTo(connectionSink);
+
+    // Complete segments reach the connection while the body is written, and
+    // only the tail waits in the connection's own buffer.
+    assertTrue(wireWrites.size() > 0);
+    assertTrue(connectionSink.buffer().size() < 8192);
+    assertEquals(payload.length, wire.size() + connectionSink.buffer().size());
+  }
+
+  /**
+   * Writes through every kind of call a body may use, including a partial
+   * array past its first byte and bytes put straight into the buffer.
+   */
+  private static final class MixedWritesBody extends RequestBody {
+    private static final byte[] ARRAY = "0123456789".getBytes(UTF_8);
+
+    @Override
+    public MediaType contentType() {
+      return MediaType.parse("text/plain");
+    }
+
+    @Override
+    public long contentLength() {
+      return 1 + 4 + 3 + ARRAY.length + "ação 😀".getBytes(UTF_8).length + 5 + 6 + 4 + 2 + 8 + 3;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+      sink.writeByte('{');
+      sink.writeInt(42);
+      sink.write(ARRAY, 4, 3);
+      sink.write(ARRAY);
+      sink.writeUtf8("ação 😀");
+      sink.write(ByteString.encodeUtf8("bytes"));
+      sink.writeAll(new Buffer().writeUtf8("source"));
+      final OutputStream stream = sink.outputStream();
+      stream.write('s');
+      stream.write(ARRAY, 1, 3);
+      sink.writeShort(7);
+      sink.writeLong(7L);
+      sink.buffer().writeUtf8("end");
+    }
+  }
+
+  private static final class Updates implements ProgressRequestBody.Listener {
+    final List<Long> bytesWritten = new ArrayList<>();
+    final List<Long> totalBytes = new ArrayList<>();
+
+    @Override
+    public void onUploadProgressChanged(long bytesWritten, long totalBytes) {
+      this.bytesWritten.add(bytesWritten);
+      this.totalBytes.add(totalBytes);
+    }
+
+    int size() {
+      return bytesWritten.size();
+    }
+
+    void assertLast(long expectedBytesWritten, long expectedTotalBytes) {
+      assertTrue("No update was sent", size() > 0);
+      assertEquals(expectedBytesWritten, (long) bytesWritten.get(size() - 1));
+      assertEquals(expectedTotalBytes, (long) totalBytes.get(size() - 1));
+    }
+  }
+}
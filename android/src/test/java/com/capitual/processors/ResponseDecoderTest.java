@@ -0,0 +1,139 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+/**
+ * {@link ResponseDecoder} on the answers of {@link FakeCapFaceBackend}, and
+ * its {@link ResponseDecoder#MAX_RESPONSE_BYTES} cap.
+ */
+public class ResponseDecoderTest {
+  private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+  private FakeCapFaceBackend backend;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("decoder-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    backend.close();
+  }
+
+  @Test
+  public void decodesScanResult() throws IOException {
+    try (Response response = post(ApiEndpoint.ENROLLMENT_3D)) {
+      final ScanResponse scan = ResponseDecoder.decodeScan(response.body());
+      assertTrue(scan.wasProcessed);
+      assertTrue(scan.scanResultBlob.length() > 0);
+    }
+  }
+
+  @Test
+  public void decodesSessionToken() throws IOException {
+    final Request request = ApiEndpoint.SESSION_TOKEN.newRequest().get().build();
+    try (Response response = NetworkingHelpers.getApiClient().newCall(request).execute()) {
+      final SessionTokenResponse token = ResponseDecoder.decodeSessionToken(response.body());
+      assertTrue(token.sessionToken.length() > 0);
+      assertNull(token.errorMessage);
+    }
+  }
+
+  @Test
+  public void acceptsScanResultUnderTheCap() throws IOException {
+    // 2 MB of blob is about 2.7 MB of base64.
+    backend.setScanResultBlobBytes(2 * 1024 * 1024);
+    try (Response response = post(ApiEndpoint.ENROLLMENT_3D)) {
+      final ScanResponse scan = ResponseDecoder.decodeScan(response.body());
+      assertTrue(scan.scanResultBlob.length() < ResponseDecoder.MAX_RESPONSE_BYTES);
+    }
+  }
+
+  @Test
+  public void refusesDeclaredLengthOverTheCap() throws IOException {
+    // 3.2 MB of blob is about 4.3 MB of base64.
+    backend.setScanResultBlobBytes(3200 * 1024);
+    try (Response response = post(ApiEndpoint.ENROLLMENT_3D)) {
+      assertTrue(response.body().contentLength() > ResponseDecoder.MAX_RESPONSE_BYTES);
+      ResponseDecoder.decodeScan(response.body());
+      fail("A response over the cap was decoded.");
+    } catch (ResponseDecoder.DecodeException expected) {
+      assertTrue(expected.getMessage().contains("larger than"));
+    }
+  }
+
+  @Test
+  public void refusesUnknownLengthOverTheCap() {
+    final Buffer body = new Buffer().writeUtf8("{\"wasProcessed\":true,\"padding\":\"");
+    while (body.size() <= ResponseDecoder.MAX_RESPONSE_BYTES) {
+      body.writeUtf8("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+    }
+    body.writeUtf8("\",\"scanResultBlob\":\"c2Nhbg==\"}");
+
+    try {
+      ResponseDecoder.decodeScan(ResponseBody.create(JSON, -1, body));
+      fail("A response over the cap was decoded.");
+    } catch (ResponseDecoder.DecodeException expected) {
+      assertTrue(expected.getMessage().contains("larger than"));
+    }
+  }
+
+  @Test
+  public void skipsUnknownFields() throws IOException {
+    final Buffer body = new Buffer().writeUtf8("{\"extra\":{\"nested\":[1,2,{\"a\":null}]},"
+        + "\"wasProcessed\":false,\"scanResultBlob\":\"c2Nhbg==\",\"more\":\"x\"}");
+
+    final ScanResponse scan = ResponseDecoder.decodeScan(ResponseBody.create(JSON, body.size(), body));
+
+    assertEquals(false, scan.wasProcessed);
+    assertEquals("c2Nhbg==", scan.scanResultBlob);
+  }
+
+  @Test
+  public void refusesMalformedAnswer() throws IOException {
+    backend.failNext(ApiEndpoint.ENROLLMENT_3D, FakeCapFaceBackend.Fault.MALFORMED, 1);
+    try (Response response = post(ApiEndpoint.ENROLLMENT_3D)) {
+      ResponseDecoder.decodeScan(response.body());
+      fail("A malformed response was decoded.");
+    } catch (ResponseDecoder.DecodeException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void refusesScanWithoutWasProcessed() {
+    final Buffer body = new Buffer().writeUtf8("{\"scanResultBlob\":\"c2Nhbg==\"}");
+    try {
+      ResponseDecoder.decodeScan(ResponseBody.create(JSON, body.size(), body));
+      fail("A scan result without wasProcessed was decoded.");
+    } catch (ResponseDecoder.DecodeException expected) {
+      assertTrue(expected.getMessage().contains("wasProcessed"));
+    }
+  }
+
+  private static Response post(ApiEndpoint endpoint) throws IOException {
+    final Request request = endpoint.newRequest()
+        .post(new JsonStreamRequestBody().put("faceScan", "c2Nhbg=="))
+        .build();
+    return NetworkingHelpers.getApiClient().newCall(request).execute();
+  }
+}
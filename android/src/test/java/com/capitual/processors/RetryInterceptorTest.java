@@ -0,0 +1,129 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * {@link RetryInterceptor} through the real API client, against
+ * {@link FakeCapFaceBackend}.
+ */
+public class RetryInterceptorTest {
+  private FakeCapFaceBackend backend;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("retry-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    backend.close();
+  }
+
+  @Test
+  public void waitsForRetryAfterBeforeRetrying() throws IOException {
+    backend.failNext(ApiEndpoint.SESSION_TOKEN, FakeCapFaceBackend.Fault.HTTP_429, 1);
+
+    final long startNanos = System.nanoTime();
+    try (Response response = execute(ApiEndpoint.SESSION_TOKEN.newRequest().get().build())) {
+      assertEquals(200, response.code());
+    }
+    final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    assertEquals(2, backend.requestCount(ApiEndpoint.SESSION_TOKEN));
+    // The fake backend asks for one second.
+    assertTrue("Retried after " + elapsedMillis + "ms", elapsedMillis >= 1000);
+  }
+
+  @Test
+  public void reusesIdempotencyKeyAcrossAttempts() throws Exception {
+    backend.failNext(ApiEndpoint.LIVENESS_3D, FakeCapFaceBackend.Fault.HTTP_500, 2);
+
+    try (Response response = execute(scanRequest(ApiEndpoint.LIVENESS_3D))) {
+      assertEquals(200, response.code());
+    }
+
+    assertEquals(3, backend.requestCount(ApiEndpoint.LIVENESS_3D));
+    final String idempotencyKey = backend.takeRequest(1000).getHeader("Idempotency-Key");
+    assertNotNull(idempotencyKey);
+    for (int attempt = 2; attempt <= 3; attempt++) {
+      final RecordedRequest retried = backend.takeRequest(1000);
+      assertEquals(idempotencyKey, retried.getHeader("Idempotency-Key"));
+    }
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() throws IOException {
+    // Every attempt is an outcome of the endpoint's breaker, so this uses an
+    // endpoint no other test calls.
+    final ApiEndpoint endpoint = ApiEndpoint.MATCH_3D_2D_IDSCAN;
+    backend.failNext(endpoint, FakeCapFaceBackend.Fault.HTTP_500, endpoint.maxAttempts);
+
+    final Request request = endpoint.newRequest()
+        .post(new JsonStreamRequestBody().put("idScan", "aWRTY2Fu"))
+        .build();
+    try (Response response = execute(request)) {
+      assertEquals(500, response.code());
+    }
+    assertEquals(endpoint.maxAttempts, backend.requestCount(endpoint));
+  }
+
+  @Test
+  public void stopsWaitingWhenCanceled() throws InterruptedException {
+    backend.failNext(ApiEndpoint.MATCH_3D_3D, FakeCapFaceBackend.Fault.HTTP_429, 1);
+    final Call call = NetworkingHelpers.getApiClient().newCall(scanRequest(ApiEndpoint.MATCH_3D_3D));
+
+    final Thread canceler = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          // Long enough for the 429 to arrive, well before the retry.
+          Thread.sleep(300);
+        } catch (InterruptedException ignored) {
+          return;
+        }
+        call.cancel();
+      }
+    });
+    canceler.start();
+
+    final long startNanos = System.nanoTime();
+    try {
+      call.execute().close();
+      fail("The canceled call completed.");
+    } catch (IOException expected) {
+      final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      assertTrue("Canceled after " + elapsedMillis + "ms", elapsedMillis < 900);
+    } finally {
+      canceler.join();
+    }
+    assertEquals(1, backend.requestCount(ApiEndpoint.MATCH_3D_3D));
+  }
+
+  private static Response execute(Request request) throws IOException {
+    return NetworkingHelpers.getApiClient().newCall(request).execute();
+  }
+
+  private static Request scanRequest(ApiEndpoint endpoint) {
+    return endpoint.newRequest()
+        .post(new JsonStreamRequestBody().put("faceScan", "c2Nhbg=="))
+        .build();
+  }
+}
@@ -0,0 +1,237 @@
+package com.capitual.processors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facetec.sdk.FaceTecIDScanResult;
+import com.facetec.sdk.FaceTecSessionResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs N concurrent simulated sessions through the real processors and the
+ * real API client, against {@link FakeCapFaceBackend}, and prints throughput,
+ * session latency, heap and thread usage.
+ *
+ * <p>From the android directory:
+ *
+ * <pre>
+ * ./gradlew sessionLoadTest -Pargs="sessions=200 type=photoIdMatch latencyMs=300 bandwidthKbps=2000"
+ * </pre>
+ *
+ * <p>Options: {@code sessions} (50), {@code type} (liveness, enrollment,
+ * authenticate, photoIdMatch or photoIdScan; liveness), {@code latencyMs}
+ * backend latency (200), {@code bandwidthKbps} per connection (unthrottled),
+ * {@code captureMs} camera time per scan (0) and {@code faceScanKb} (150).
+ */
+public final class SessionLoadHarness {
+  private static final long TIMEOUT_MINUTES = 10;
+
+  private final String type;
+  private final CountDownLatch finished;
+  private final long[] sessionNanos;
+  private final Map<String, Integer> outcomes = new TreeMap<>();
+
+  private SessionLoadHarness(String type, int sessions) {
+    this.type = type;
+    this.finished = new CountDownLatch(sessions);
+    this.sessionNanos = new long[sessions];
+  }
+
+  public static void main(String[] args) throws Exception {
+    final Map<String, String> options = new TreeMap<>();
+    for (String arg : args) {
+      for (String option : arg.trim().split("\\s+")) {
+        final int separator = option.indexOf('=');
+        if (separator > 0) {
+          options.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+      }
+    }
+    final int sessions = Integer.parseInt(option(options, "sessions", "50"));
+    final String type = option(options, "type", "liveness");
+    final FakeFaceTecSession.ScanSizes sizes = new FakeFaceTecSession.ScanSizes();
+    sizes.faceScanBytes = Integer.parseInt(option(options, "faceScanKb", "150")) * 1024;
+
+    final FakeCapFaceBackend backend = new FakeCapFaceBackend().start()
+        .setLatency(Long.parseLong(option(options, "latencyMs", "200")))
+        .setBandwidth(Long.parseLong(option(options, "bandwidthKbps", "0")) * 1000 / 8);
+    final FakeFaceTecSession camera = new FakeFaceTecSession(sizes,
+        Long.parseLong(option(options, "captureMs", "0")), true);
+    try {
+      Config.setUrl(backend.baseUrl());
+      Config.setDevice("load-test-device");
+      EndpointRouter.configure(backend.baseUrl(), null);
+      FaceTecBridge.setLauncher(camera);
+      new SessionLoadHarness(type, sessions).run();
+    } finally {
+      FaceTecBridge.setLauncher(null);
+      camera.shutdown();
+      backend.close();
+    }
+    System.exit(0);
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    final String value = options.get(name);
+    return value == null ? defaultValue : value;
+  }
+
+  private void run() throws InterruptedException {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    System.gc();
+    final long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+    final int baselineThreads = threads.getThreadCount();
+    threads.resetPeakThreadCount();
+
+    final AtomicLong peakHeap = new AtomicLong(baselineHeap);
+    final Thread sampler = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+          final long used = memory.getHeapMemoryUsage().getUsed();
+          if (used > peakHeap.get()) {
+            peakHeap.set(used);
+          }
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "Load harness heap sampler");
+    sampler.setDaemon(true);
+    sampler.start();
+
+    final long startNanos = System.nanoTime();
+    for (int i = 0; i < sessionNanos.length; i++) {
+      start(i);
+    }
+    final boolean isDone = finished.await(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    final long wallNanos = System.nanoTime() - startNanos;
+    sampler.interrupt();
+
+    final int sessions = sessionNanos.length;
+    final long[] sorted = Arrays.copyOf(sessionNanos, sessions);
+    Arrays.sort(sorted);
+    System.out.printf(Locale.ROOT, "%d %s sessions in %.0f ms%s%n", sessions, type, millis(wallNanos),
+        isDone ? "" : " (timed out)");
+    synchronized (outcomes) {
+      System.out.println("Outcomes: " + outcomes);
+    }
+    System.out.printf(Locale.ROOT, "Throughput: %.1f sessions/s%n", sessions / (wallNanos / 1e9));
+    System.out.printf(Locale.ROOT, "Session latency: p50 %.0f ms, p90 %.0f ms, p99 %.0f ms, max %.0f ms%n",
+        millis(percentile(sorted, 0.5)), millis(percentile(sorted, 0.9)), millis(percentile(sorted, 0.99)),
+        millis(sorted[sessions - 1]));
+    final long heapGrowth = peakHeap.get() - baselineHeap;
+    System.out.printf(Locale.ROOT, "Peak heap: +%.1f MB, %.0f KB per session%n", heapGrowth / 1048576.0,
+        heapGrowth / 1024.0 / sessions);
+    final int threadGrowth = threads.getPeakThreadCount() - baselineThreads;
+    System.out.printf(Locale.ROOT, "Peak threads: +%d, %.2f per session%n", threadGrowth,
+        threadGrowth / (double) sessions);
+  }
+
+  private void start(int index) {
+    final Host host = new Host(index);
+    SessionMetrics.start(host.sessionId);
+    final JavaOnlyMap data = JavaOnlyMap.of("userId", host.sessionId, "attempt", 1.0, "isFirstAccess", true);
+
+    switch (type) {
+      case "enrollment":
+        new EnrollmentProcessor("token", null, host, data);
+        break;
+      case "authenticate":
+        new AuthenticateProcessor("token", null, host, data);
+        break;
+      case "photoIdMatch":
+        new PhotoIDMatchProcessor("token", null, host, data);
+        break;
+      case "photoIdScan":
+        new PhotoIDScanProcessor("token", null, host, data);
+        break;
+      default:
+        new LivenessCheckProcessor("token", null, host, data);
+        break;
+    }
+  }
+
+  private void finish(String outcome) {
+    synchronized (outcomes) {
+      final Integer count = outcomes.get(outcome);
+      outcomes.put(outcome, count == null ? 1 : count + 1);
+    }
+    finished.countDown();
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted[Math.max(0, (int) Math.ceil(sorted.length * percentile) - 1)];
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  /**
+   * One session's side of the React Native module: the promise becomes an
+   * outcome and a duration.
+   */
+  private class Host implements SessionHost {
+    private final int index;
+    private final String sessionId;
+    private final long startNanos = System.nanoTime();
+
+    Host(int index) {
+      this.index = index;
+      this.sessionId = "load-test-" + index;
+    }
+
+    @Override
+    public String getLatestSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public String getLatestExternalDatabaseRefID() {
+      return "android_capitual_app_" + sessionId;
+    }
+
+    @Override
+    public void sendEvent(@NonNull String eventName, @Nullable Boolean eventValue) {
+    }
+
+    @Override
+    public void resolveProcessorPromise(String sessionId, ApiEndpoint endpoint) {
+      LatencyHistograms.record(endpoint, LatencyHistograms.Metric.SESSION,
+          SessionMetrics.finish(sessionId, SessionMetrics.RESOLVED));
+      sessionNanos[index] = System.nanoTime() - startNanos;
+      finish(SessionMetrics.RESOLVED);
+    }
+
+    @Override
+    public void rejectProcessorPromise(String message, String code) {
+      SessionMetrics.finish(sessionId, code);
+      sessionNanos[index] = System.nanoTime() - startNanos;
+      finish(code);
+    }
+
+    @Override
+    public void setLatestSessionResult(FaceTecSessionResult sessionResult) {
+    }
+
+    @Override
+    public void setLatestIDScanResult(FaceTecIDScanResult idScanResult) {
+    }
+  }
+}
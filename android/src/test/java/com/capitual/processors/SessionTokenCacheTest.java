@@ -0,0 +1,100 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SessionTokenCache} handing out single-use tokens from the pool and to
+ * waiting callers, against {@link FakeCapFaceBackend}.
+ */
+public class SessionTokenCacheTest {
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  private FakeCapFaceBackend backend;
+
+  @Before
+  public void setUp() throws IOException {
+    backend = new FakeCapFaceBackend().start();
+    Config.setUrl(backend.baseUrl());
+    Config.setDevice("token-test-device");
+    EndpointRouter.configure(backend.baseUrl(), null);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    SessionTokenCache.configure(1L, 120L);
+    backend.close();
+  }
+
+  @Test
+  public void servesEachWaiterItsOwnToken() throws InterruptedException {
+    SessionTokenCache.configure(0L, 120L);
+    // Both callers arrive while the first token request is in flight.
+    backend.setLatency(ApiEndpoint.SESSION_TOKEN, 300);
+    final Tokens tokens = new Tokens();
+
+    SessionTokenCache.acquire(tokens);
+    SessionTokenCache.acquire(tokens);
+
+    final String first = tokens.take();
+    final String second = tokens.take();
+    assertNotEquals(first, second);
+    assertEquals(2, backend.requestCount(ApiEndpoint.SESSION_TOKEN));
+  }
+
+  @Test
+  public void handsOutPooledTokenAndRefills() throws InterruptedException {
+    SessionTokenCache.configure(1L, 120L);
+    SessionTokenCache.prefetch();
+    awaitPooledToken();
+    assertEquals(1, backend.requestCount(ApiEndpoint.SESSION_TOKEN));
+
+    final Tokens tokens = new Tokens();
+    SessionTokenCache.acquire(tokens);
+
+    // The pooled token is handed out right away, then replaced.
+    assertNotNull(tokens.queue.poll());
+    awaitPooledToken();
+    assertEquals(2, backend.requestCount(ApiEndpoint.SESSION_TOKEN));
+  }
+
+  private static void awaitPooledToken() throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!SessionTokenCache.hasToken() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue("No token was pooled", SessionTokenCache.hasToken());
+  }
+
+  private static final class Tokens implements SessionTokenCache.Callback {
+    final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+
+    @Override
+    public void onSessionToken(String sessionToken) {
+      queue.add(sessionToken);
+    }
+
+    @Override
+    public void onError(String message, String code) {
+      queue.add("error: " + code);
+    }
+
+    String take() throws InterruptedException {
+      final String token = queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      assertNotNull("No token was handed out", token);
+      assertTrue(token, !token.startsWith("error: "));
+      return token;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.capitual.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The hash {@link ThemeCache} saves with a theme, which is how a theme
+ * already applied is recognized when JS sends it again.
+ */
+public class ThemeCacheTest {
+  @Test
+  public void hashesAMissingThemeToZero() {
+    assertEquals(0, ThemeCache.hash(null));
+  }
+
+  @Test
+  public void hashesTheSameThemeTheSameInAnyKeyOrder() {
+    final Map<String, Object> ordered = new LinkedHashMap<>();
+    ordered.put("title", "Hello");
+    ordered.put("subtitle", "World");
+    final Map<String, Object> reversed = new LinkedHashMap<>();
+    reversed.put("subtitle", "World");
+    reversed.put("title", "Hello");
+
+    final long hash = ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadius", 8.0, "messages", ordered));
+
+    assertEquals(hash, ThemeCache.hash(JavaOnlyMap.of("messages", reversed, "buttonCornerRadius", 8.0)));
+  }
+
+  @Test
+  public void hashesTheSameInEveryLaunch() {
+    // The hash saved by a previous launch must still match, so it can't
+    // depend on anything but the theme.
+    assertEquals(91708434433507814L, ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadius", 8.0)));
+  }
+
+  @Test
+  public void tellsApartThemesThatOnlyLookAlike() {
+    final long hash = ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadius", "8.0"));
+
+    assertNotEquals(hash, ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadius", 8.0)));
+    assertNotEquals(hash, ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadius", "8.1")));
+    assertNotEquals(hash, ThemeCache.hash(JavaOnlyMap.of("buttonCornerRadiu", "s8.0")));
+    assertNotEquals(
+        ThemeCache.hash(JavaOnlyMap.of("items", Arrays.asList("a", "b"))),
+        ThemeCache.hash(JavaOnlyMap.of("items", Arrays.asList("ab"))));
+    assertNotEquals(
+        ThemeCache.hash(JavaOnlyMap.of("messages", new HashMap<String, Object>())),
+        ThemeCache.hash(JavaOnlyMap.of("messages", null)));
+  }
+}
@@ -0,0 +1,88 @@
+package com.capitual.processors.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CompiledTheme} compiling the theme JS sends and reading it back from
+ * the binary form the theme cache saves. Colors go through
+ * {@code Color.parseColor}, which is a stub in unit tests, so only the other
+ * values are checked.
+ */
+public class CompiledThemeTest {
+  @Test
+  public void compilesAMissingThemeToTheEmptyOne() {
+    assertSame(CompiledTheme.EMPTY, CompiledTheme.compile(null, null));
+    assertEquals(12, CompiledTheme.EMPTY.borderRadius("buttonCornerRadius", 12));
+    assertNull(CompiledTheme.EMPTY.message("feedbackCustomization", "retryScreenHeader"));
+  }
+
+  @Test
+  public void compilesEachKindOfValue() {
+    final CompiledTheme theme = CompiledTheme.compile(theme(), null);
+
+    assertEquals(8, theme.borderRadius("frameCornerRadius", 0));
+    // A negative radius is left out, so the default applies.
+    assertEquals(20, theme.borderRadius("buttonCornerRadius", 20));
+    assertEquals("Verifying", theme.message("resultMessages", "processing"));
+    assertEquals("3", theme.message("resultMessages", "retries"));
+    assertNull("Nested objects are not messages", theme.message("resultMessages", "nested"));
+    assertNull("Empty strings are left out", theme.string("frameBackgroundColor"));
+    // Without a context, images keep their default but their names are kept.
+    assertEquals(7, theme.image("logoImage", 7));
+    assertEquals("brand_logo", theme.string("logoImage"));
+  }
+
+  @Test
+  public void compilesTheSameThemeToEqualSnapshots() {
+    final CompiledTheme first = CompiledTheme.compile(theme(), null);
+    final CompiledTheme second = CompiledTheme.compile(theme(), null);
+
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+  }
+
+  @Test
+  public void readsBackWhatItWrites() throws IOException {
+    final CompiledTheme theme = CompiledTheme.compile(theme(), null);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    theme.writeTo(new DataOutputStream(bytes));
+    final CompiledTheme read = CompiledTheme.readFrom(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), null);
+
+    assertEquals(theme, read);
+    assertEquals("Verifying", read.message("resultMessages", "processing"));
+
+    // The same theme writes the same bytes, whatever the order of its maps.
+    final ByteArrayOutputStream again = new ByteArrayOutputStream();
+    read.writeTo(new DataOutputStream(again));
+    assertEquals(bytes.toString("ISO-8859-1"), again.toString("ISO-8859-1"));
+  }
+
+  private static JavaOnlyMap theme() {
+    final Map<String, Object> resultMessages = new HashMap<>();
+    resultMessages.put("processing", "Verifying");
+    resultMessages.put("retries", 3);
+    resultMessages.put("nested", new HashMap<String, Object>());
+    return JavaOnlyMap.of(
+        "frameCornerRadius", 8.0,
+        "buttonCornerRadius", -1.0,
+        "frameBackgroundColor", "",
+        "logoImage", "brand_logo",
+        "resultMessages", resultMessages);
+  }
+}
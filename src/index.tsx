@@ -1,5 +1,13 @@
+import { Platform } from 'react-native';
 import { CapfaceSdk, ReactNativeCapfaceSdk } from './types';
 
+/**
+ * @description The diagnostics and session methods only exist in the Android
+ * native module. Elsewhere their wrappers settle with a documented value
+ * instead of calling a method that is not there.
+ */
+const UNSUPPORTED_PLATFORM = 'CapFaceUnsupportedPlatform';
+
 /**
  * @description This is the **principal** method to be called, he must be
  * **called first** to initialize the Capface SDK. If he doens't be called the
@@ -10,6 +18,8 @@ import { CapfaceSdk, ReactNativeCapfaceSdk } from './types';
  *
  * @return {Promise<boolean>} Represents if Capface SDK initialized with
  * successful.
+ * @throws `CapFaceInvalidConfiguration` if an option of `params` is invalid,
+ * or `false` if the SDK couldn't be initialized.
  */
 export function initialize({
   params,
@@ -19,9 +29,9 @@ export function initialize({
     ReactNativeCapfaceSdk.initializeSdk(
       params,
       headers,
-      (successful: boolean) => {
+      (successful: boolean, code?: string) => {
         if (successful) resolve(true);
-        else reject(false);
+        else reject(code ?? false);
       }
     );
   });
@@ -34,12 +44,16 @@ export function initialize({
  * @param {Object|undefined} data - The object with data to be will send on
  * photo ID match. The data is optional.
  *
- * @return {Promise<boolean>} Represents if photo match was a successful.
+ * @return {Promise<boolean|CapfaceSdk.SessionResult>} Represents if photo
+ * match was a successful, with the session timings when the `sessionMetrics`
+ * option is on.
  * @throws If photo ID match was a unsuccessful or occurred some interference.
  */
-export async function photoMatch(data?: Object): Promise<boolean> {
+export async function photoMatch(
+  data?: Object
+): Promise<boolean | CapfaceSdk.SessionResult> {
   return await ReactNativeCapfaceSdk.handlePhotoIDMatch(data)
-    .then((successful: boolean) => successful)
+    .then((result: boolean | CapfaceSdk.SessionResult) => result)
     .catch((error: Error) => {
       throw new Error(error.message);
     });
@@ -52,12 +66,16 @@ export async function photoMatch(data?: Object): Promise<boolean> {
  * @param {Object|undefined} data - The object with data to be will send on
  * enrollment. The data is optional.
  *
- * @return {Promise<boolean>} Represents if enrollment was a successful.
+ * @return {Promise<boolean|CapfaceSdk.SessionResult>} Represents if
+ * enrollment was a successful, with the session timings when the
+ * `sessionMetrics` option is on.
  * @throws If enrollment was a unsuccessful or occurred some interference.
  */
-export async function enroll(data?: Object): Promise<boolean> {
+export async function enroll(
+  data?: Object
+): Promise<boolean | CapfaceSdk.SessionResult> {
   return await ReactNativeCapfaceSdk.handleEnrollUser(data)
-    .then((successful: boolean) => successful)
+    .then((result: boolean | CapfaceSdk.SessionResult) => result)
     .catch((error: Error) => {
       throw new Error(error.message);
     });
@@ -70,12 +88,16 @@ export async function enroll(data?: Object): Promise<boolean> {
  * @param {Object|undefined} data - The object with data to be will send on
  * authentication. The data is optional.
  *
- * @return {Promise<boolean>} Represents if authentication was a successful.
+ * @return {Promise<boolean|CapfaceSdk.SessionResult>} Represents if
+ * authentication was a successful, with the session timings when the
+ * `sessionMetrics` option is on.
  * @throws If authenticate was a unsuccessful or occurred some interference.
  */
-export async function authenticate(data?: Object): Promise<boolean> {
+export async function authenticate(
+  data?: Object
+): Promise<boolean | CapfaceSdk.SessionResult> {
   return await ReactNativeCapfaceSdk.handleAuthenticateUser(data)
-    .then((successful: boolean) => successful)
+    .then((result: boolean | CapfaceSdk.SessionResult) => result)
     .catch((error: Error) => {
       throw new Error(error.message);
     });
@@ -94,4 +116,77 @@ export function setTheme(options?: CapfaceSdk.Theme): void {
   ReactNativeCapfaceSdk.handleTheme(options);
 }
 
+/**
+ * @description This method returns how often the uploads reused an already
+ * open connection, kept warm while the camera is open. Only Android.
+ *
+ * @return {Promise<CapfaceSdk.ConnectionStats>} The connection statistics.
+ * @throws `CapFaceUnsupportedPlatform` on platforms other than Android.
+ */
+export async function getConnectionStats(): Promise<CapfaceSdk.ConnectionStats> {
+  if (Platform.OS !== 'android') throw UNSUPPORTED_PLATFORM;
+  return await ReactNativeCapfaceSdk.getConnectionStats();
+}
+
+/**
+ * @description This method cancels the pending requests of a session, without
+ * touching the requests of other sessions. Only Android.
+ *
+ * @param {string|undefined} sessionId - The session to be cancelled. The
+ * current session is cancelled when it's not provided.
+ *
+ * @return {Promise<boolean>} Represents if something was cancelled. Always
+ * `false` on platforms other than Android.
+ */
+export async function cancelSession(sessionId?: string): Promise<boolean> {
+  if (Platform.OS !== 'android') return false;
+  return await ReactNativeCapfaceSdk.cancelSession(sessionId);
+}
+
+/**
+ * @description This method returns the connection speed measured by the SDK
+ * requests. It can be used to warn users on bad connections before the camera
+ * opens. Only Android.
+ *
+ * @return {Promise<CapfaceSdk.NetworkEstimate>} The current estimate.
+ * @throws `CapFaceUnsupportedPlatform` on platforms other than Android.
+ */
+export async function getNetworkEstimate(): Promise<CapfaceSdk.NetworkEstimate> {
+  if (Platform.OS !== 'android') throw UNSUPPORTED_PLATFORM;
+  return await ReactNativeCapfaceSdk.getNetworkEstimate();
+}
+
+/**
+ * @description This method returns the timings of a session: token fetch,
+ * camera, payload building, request and `proceedToNextStep`, plus the DNS,
+ * connect, TLS, upload and time to first byte of its requests. Only Android.
+ *
+ * @param {string|undefined} sessionId - The session to be read. The current
+ * session is read when it's not provided.
+ *
+ * @return {Promise<CapfaceSdk.SessionMetrics|null>} The session timings.
+ * Always `null` on platforms other than Android.
+ */
+export async function getSessionMetrics(
+  sessionId?: string
+): Promise<CapfaceSdk.SessionMetrics | null> {
+  if (Platform.OS !== 'android') return null;
+  return await ReactNativeCapfaceSdk.getSessionMetrics(sessionId);
+}
+
+/**
+ * @description This method returns the latency percentiles of the token
+ * fetch, uploads, server processing and whole sessions, by endpoint, recorded
+ * since its previous call, and starts over. Only Android.
+ *
+ * @return {Promise<CapfaceSdk.LatencyHistograms>} The percentiles by endpoint.
+ * @throws `CapFaceUnsupportedPlatform` on platforms other than Android.
+ */
+export async function getLatencyHistograms(): Promise<
+  CapfaceSdk.LatencyHistograms
+> {
+  if (Platform.OS !== 'android') throw UNSUPPORTED_PLATFORM;
+  return await ReactNativeCapfaceSdk.getLatencyHistograms();
+}
+
 export * from './types';
@@ -733,6 +733,15 @@ export declare namespace CapfaceSdk {
      */
     url: string;
 
+    /**
+     * @description Other base URLs serving the same backend, such as other
+     * regions. Each request goes to the fastest healthy one, measured at
+     * initialization, and moves to the next one when it fails. Only Android.
+     *
+     * @default []
+     */
+    urls?: string[];
+
     /**
      * @description Your public key to will be used to initialize CapfaceSDK.
      * Available in your Capface account.
@@ -749,6 +758,114 @@ export declare namespace CapfaceSdk {
      * @description Option to select production or developement mode for initialize CapfaceSDK.
      */
     isDeveloperMode?: boolean;
+
+    /**
+     * @description Compression used for the upload requests, sent with the
+     * `Content-Encoding` header. If the server rejects compressed uploads, they
+     * are sent uncompressed. Only Android.
+     *
+     * @default "none"
+     */
+    compression?: 'gzip' | 'deflate' | 'none';
+
+    /**
+     * @description Minimum size in bytes of an upload body to be compressed.
+     * Only Android.
+     *
+     * @default 1024
+     */
+    compressionThreshold?: number;
+
+    /**
+     * @description How many session tokens are fetched ahead of time, right
+     * after the initialization, so a session starts without waiting for the
+     * token request. Use `0` to fetch a token only when a session starts.
+     * Only Android.
+     *
+     * @default 1
+     */
+    sessionTokenPoolSize?: number;
+
+    /**
+     * @description Time in seconds a prefetched session token is used before
+     * being discarded. Tokens are refreshed in background before that.
+     * Only Android.
+     *
+     * @default 120
+     */
+    sessionTokenTTL?: number;
+
+    /**
+     * @description Sends a second session token request when the first one
+     * is slow to answer, using whichever answers first. Hedges are limited to
+     * about one in ten requests. Only Android.
+     *
+     * @default false
+     */
+    sessionTokenHedging?: boolean;
+
+    /**
+     * @description Time in milliseconds to wait for the session token before
+     * hedging. By default it's the 90th percentile of the previous requests.
+     * Only Android.
+     */
+    sessionTokenHedgeDelay?: number;
+
+    /**
+     * @description Minimum time in seconds given to each request. Request
+     * timeouts are derived from the payload size and the measured connection
+     * speed, and never go below this value. Only Android.
+     *
+     * @default 15
+     */
+    minRequestTimeout?: number;
+
+    /**
+     * @description Maximum time in seconds given to each request, retries
+     * included. Only Android.
+     *
+     * @default 180
+     */
+    maxRequestTimeout?: number;
+
+    /**
+     * @description Resolves the session methods with a `SessionResult`,
+     * carrying the session timings, instead of `true`. Only Android.
+     *
+     * @default false
+     */
+    sessionMetrics?: boolean;
+
+    /**
+     * @description Fields left out of the request the CapFace screen waits
+     * on. They're saved on the device, encrypted with an Android Keystore
+     * key, and uploaded in background to `/session-artifacts` once the
+     * backend processed the session's request. Saved fields not uploaded
+     * within 24 hours are deleted. On Android 5, which can't keep the key,
+     * nothing is left out. Each upload carries the `sessionId` that the session's requests send in
+     * the `X-Session-Id` header, and the `externalDatabaseRefID` when the
+     * session has one. Only use it for fields your backend doesn't need to
+     * process the scan. Only Android.
+     *
+     * @default []
+     */
+    deferredFields?: Array<
+      | 'data'
+      | 'auditTrailImage'
+      | 'lowQualityAuditTrailImage'
+      | 'idScanFrontImage'
+      | 'idScanBackImage'
+    >;
+
+    /**
+     * @description Saves the applied theme on the device, so the next launches
+     * apply it as soon as the module is created, before `initializeSdk` or
+     * `handleTheme` are called. Turning it off deletes the saved theme. Only
+     * Android.
+     *
+     * @default false
+     */
+    persistTheme?: boolean;
   }
 
   /**
@@ -763,6 +880,19 @@ export declare namespace CapfaceSdk {
      */
     CapFaceHasNotBeenInitialized = 'CapFaceHasNotBeenInitialized',
 
+    /**
+     * @description When an option passed to `initialize` has the wrong type
+     * or value, such as an unknown `compression` or a negative number. Nothing
+     * is applied. Only Android.
+     */
+    CapFaceInvalidConfiguration = 'CapFaceInvalidConfiguration',
+
+    /**
+     * @description When a method that only exists on Android, such as
+     * `getConnectionStats`, is called on another platform.
+     */
+    CapFaceUnsupportedPlatform = 'CapFaceUnsupportedPlatform',
+
     /**
      * @description When the image sent to the processors cannot be processed
      * due to inconsistency.
@@ -796,6 +926,166 @@ export declare namespace CapfaceSdk {
      * due to inconsistency. Only Android.
      */
     CapfaceScanWasntProcessed = 'CapfaceScanWasntProcessed',
+
+    /**
+     * @description When the session was cancelled with `cancelSession` before
+     * the camera opened. Only Android.
+     */
+    CapFaceSessionCancelled = 'CapFaceSessionCancelled',
+
+    /**
+     * @description When the CapFace backend has been failing or answering too
+     * slowly, so the session was refused before the camera opened. Try again
+     * after about 30 seconds. Only Android.
+     */
+    CapFaceCircuitOpen = 'CapFaceCircuitOpen',
+  }
+
+  /**
+   * @interface ConnectionStats
+   *
+   * @description How often the uploads reused an already open connection.
+   */
+  interface ConnectionStats {
+    /**
+     * @description Number of uploads sent since the app started.
+     */
+    uploads: number;
+
+    /**
+     * @description Number of uploads sent on an already open connection.
+     */
+    warmUploads: number;
+
+    /**
+     * @description Ratio between `warmUploads` and `uploads`, from 0 to 1.
+     */
+    warmUploadRatio: number;
+  }
+
+  /**
+   * @interface SessionMetrics
+   *
+   * @description The timings of a session, in milliseconds.
+   */
+  interface SessionMetrics {
+    /**
+     * @description The session these timings belong to.
+     */
+    sessionId: string;
+
+    /**
+     * @description If the session promise was already resolved or rejected.
+     */
+    isFinished: boolean;
+
+    /**
+     * @description How the session ended: `resolved`, or the error code its
+     * promise was rejected with. `null` while the session is running.
+     */
+    outcome: string | null;
+
+    /**
+     * @description Time from the session method call to the promise result,
+     * or until now when the session is still running.
+     */
+    totalMs: number;
+
+    /**
+     * @description Time spent in each phase of the session. Phases that
+     * happen twice, like the face and ID steps of a photo match, add up.
+     */
+    phases: {
+      token?: number;
+      camera?: number;
+      payload?: number;
+      request?: number;
+      proceedToNextStep?: number;
+    };
+
+    /**
+     * @description Network timings summed over every request of the session.
+     */
+    network: {
+      dns?: number;
+      connect?: number;
+      tls?: number;
+      requestBody?: number;
+      ttfb?: number;
+    };
+  }
+
+  /**
+   * @interface SessionResult
+   *
+   * @description The result of a session when the `sessionMetrics` option is
+   * on.
+   */
+  interface SessionResult {
+    successful: boolean;
+    metrics: SessionMetrics;
+  }
+
+  /**
+   * @interface NetworkEstimate
+   *
+   * @description The connection speed measured by the SDK requests.
+   */
+  interface NetworkEstimate {
+    /**
+     * @description Estimated upload throughput, in kilobits per second.
+     */
+    throughputKbps: number;
+
+    /**
+     * @description Estimated round trip time, in milliseconds.
+     */
+    rttMs: number;
+
+    /**
+     * @description Number of measurements behind the estimate.
+     */
+    samples: number;
+
+    /**
+     * @description Connection quality. It's `UNKNOWN` before any measurement.
+     */
+    quality: 'UNKNOWN' | 'POOR' | 'MODERATE' | 'GOOD';
+  }
+
+  /**
+   * @interface LatencySnapshot
+   *
+   * @description Latency percentiles of one metric, in milliseconds.
+   */
+  interface LatencySnapshot {
+    /**
+     * @description Number of values recorded since the previous snapshot.
+     */
+    count: number;
+    meanMs: number;
+    p50Ms: number;
+    p90Ms: number;
+    p99Ms: number;
+    maxMs: number;
+  }
+
+  /**
+   * @interface LatencyHistograms
+   *
+   * @description Latency percentiles by endpoint path, like
+   * `/session-token`. `call` is the whole request with its retries, `upload`
+   * the request body upload, `server` the time from the request sent to the
+   * response headers and `session` the time from the session method call to
+   * the promise result. Metrics without values are left out.
+   */
+  interface LatencyHistograms {
+    [path: string]: {
+      call?: LatencySnapshot;
+      upload?: LatencySnapshot;
+      server?: LatencySnapshot;
+      session?: LatencySnapshot;
+    };
   }
 
   /**
@@ -813,7 +1103,9 @@ export declare namespace CapfaceSdk {
      * @param {CapfaceSdk.Headers} headers - Headers your requests, to each
      * request it's sent. The headers is optional.
      * @param {Function} callback - Callback function to be called after with
-     * the response of the successfully. The callback is optional.
+     * the response of the successfully. When an option is invalid, it also
+     * receives the `CapFaceInvalidConfiguration` code and a message. The
+     * callback is optional.
      *
      * @return {Promise<boolean>} Represents if initialization was a successful.
      */
@@ -833,7 +1125,7 @@ export declare namespace CapfaceSdk {
      * @return {Promise<boolean>} Represents if photo match was a successful.
      * @throws If photo ID match was a unsuccessful or occurred some interference.
      */
-    handlePhotoIDMatch(data?: Object): Promise<boolean>;
+    handlePhotoIDMatch(data?: Object): Promise<boolean | SessionResult>;
 
     /**
      * @description This method makes a 3D reading of the user's face. But, you
@@ -845,7 +1137,7 @@ export declare namespace CapfaceSdk {
      * @return {Promise<boolean>} Represents if enrollment was a successful.
      * @throws If enrollment was a unsuccessful or occurred some interference.
      */
-    handleEnrollUser(data?: Object): Promise<boolean>;
+    handleEnrollUser(data?: Object): Promise<boolean | SessionResult>;
 
     /**
      * @description This method makes a 3D reading of the user's face. But, you
@@ -857,7 +1149,7 @@ export declare namespace CapfaceSdk {
      * @return {Promise<boolean>} Represents if authentication was a successful.
      * @throws If authenticate was a unsuccessful or occurred some interference.
      */
-    handleAuthenticateUser(data?: Object): Promise<boolean>;
+    handleAuthenticateUser(data?: Object): Promise<boolean | SessionResult>;
 
     /**
      * @description This method must be used to **set** the **theme** of the
@@ -869,6 +1161,53 @@ export declare namespace CapfaceSdk {
      * @return {void}
      */
     handleTheme(options?: Theme): void;
+
+    /**
+     * @description This method returns how often the uploads reused an
+     * already open connection. Only Android.
+     *
+     * @return {Promise<ConnectionStats>} The connection statistics.
+     */
+    getConnectionStats(): Promise<ConnectionStats>;
+
+    /**
+     * @description This method cancels the requests of a session. Only
+     * Android.
+     *
+     * @param {string|undefined} sessionId - The session to be cancelled. The
+     * current session is cancelled when it's not provided.
+     *
+     * @return {Promise<boolean>} Represents if something was cancelled.
+     */
+    cancelSession(sessionId?: string): Promise<boolean>;
+
+    /**
+     * @description This method returns the connection speed measured by the
+     * SDK requests. Only Android.
+     *
+     * @return {Promise<NetworkEstimate>} The current estimate.
+     */
+    getNetworkEstimate(): Promise<NetworkEstimate>;
+
+    /**
+     * @description This method returns the timings of a session. Only
+     * Android.
+     *
+     * @param {string|undefined} sessionId - The session to be read. The
+     * current session is read when it's not provided.
+     *
+     * @return {Promise<SessionMetrics|null>} The session timings, or `null`
+     * for an unknown session.
+     */
+    getSessionMetrics(sessionId?: string): Promise<SessionMetrics | null>;
+
+    /**
+     * @description This method returns the latency percentiles recorded
+     * since its previous call, and starts over. Only Android.
+     *
+     * @return {Promise<LatencyHistograms>} The percentiles by endpoint.
+     */
+    getLatencyHistograms(): Promise<LatencyHistograms>;
   }
 }
 